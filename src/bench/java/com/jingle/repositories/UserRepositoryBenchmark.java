@@ -0,0 +1,79 @@
+package com.jingle.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.jingle.Server;
+import com.jingle.models.User;
+
+/**
+ * Inserts/sec through UserRepository, comparing one sequence call per insert
+ * (allocationSize 1) against ids reserved in blocks
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserRepositoryBenchmark {
+
+	private static final int BATCH = 100;
+	private static final byte[] PASSWORD_HASH = new byte[16];
+
+	@Param({"1", "50"})
+	private int allocationSize;
+
+	private ConfigurableApplicationContext context;
+	private UserRepository userRepository;
+
+	private final AtomicLong counter = new AtomicLong();
+
+	@Setup
+	public void setup() {
+		context = new SpringApplicationBuilder(Server.class)
+						.web(WebApplicationType.NONE)
+						.properties("logging.level.root=WARN")
+						// As an argument, so it overrides application.properties
+						.run("--spring.jpa.properties.jingle.id.allocation-size=" + allocationSize);
+
+		userRepository = context.getBean(UserRepository.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	private User newUser() {
+		long n = counter.incrementAndGet();
+		return new User("benchInsert" + n, "Jingle", "Bells", "benchInsert" + n + "@jingle.com", PASSWORD_HASH);
+	}
+
+	@Benchmark
+	public User save() {
+		return userRepository.save(newUser());
+	}
+
+	/**
+	 * Reports inserts (not batches) per second
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<User> saveAll() {
+		List<User> users = new ArrayList<User>(BATCH);
+
+		for(int i = 0; i < BATCH; i++) {
+			users.add(newUser());
+		}
+
+		return userRepository.saveAll(users);
+	}
+}
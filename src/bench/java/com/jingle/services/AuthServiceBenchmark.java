@@ -0,0 +1,128 @@
+package com.jingle.services;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.jingle.exceptions.ExpiredAuthKeyException;
+import com.jingle.exceptions.InvalidAuthKeyException;
+import com.jingle.models.PasswordHash;
+import com.jingle.models.User;
+import com.jingle.sessions.InMemorySessionStore;
+import com.jingle.sessions.SignedTokens;
+
+/**
+ * Benchmarks for AuthService's hashing and session operations.
+ * Add -Djmh.args="-f 1 -prof gc" to see allocations per operation
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AuthServiceBenchmark {
+
+	private static final char[] PASSWORD = "jingle12".toCharArray();
+	private static final byte[] SALT = "21elgnij21elgnij21el".getBytes();
+	private static final int SESSIONS = 10000;
+
+	private AuthService authService;
+	private AuthService tokenAuthService;
+	private AuthService slidingAuthService;
+	private String[] authKeys;
+	private String[] slidingAuthKeys;
+	private String[] tokens;
+	private User[] users;
+
+	@Setup
+	public void setup() {
+		authService = new AuthService();
+		tokenAuthService = new AuthService(SignedTokens.fromConfig("", null));
+		slidingAuthService = new AuthService(new InMemorySessionStore(), true, AuthService.DEFAULT_MAX_LIFETIME);
+		authKeys = new String[SESSIONS];
+		slidingAuthKeys = new String[SESSIONS];
+		tokens = new String[SESSIONS];
+		users = new User[SESSIONS];
+
+		for(int i = 0; i < SESSIONS; i++) {
+			users[i] = new User("benchUser" + i, "Jingle", "Bells", "bench" + i + "@jingle.com", null);
+			users[i].setId((long)i);
+			authKeys[i] = authService.newAuthKey((long)i);
+			tokens[i] = tokenAuthService.newAuthKey((long)i);
+			slidingAuthKeys[i] = slidingAuthService.newAuthKey((long)i);
+		}
+	}
+
+	@Benchmark
+	public PasswordHash hashPassword() {
+		return authService.hashPassword(PASSWORD.clone());
+	}
+
+	/**
+	 * The JCE SecretKeyFactory path hashPassword would take without PasswordHasher, as a baseline
+	 */
+	@Benchmark
+	public byte[] hashPassword_secretKeyFactory() throws Exception {
+		SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+		return factory.generateSecret(new PBEKeySpec(PASSWORD.clone(), SALT, 65536, 128)).getEncoded();
+	}
+
+	@Benchmark
+	public String newAuthKey() {
+		return authService.newAuthKey(ThreadLocalRandom.current().nextLong(SESSIONS));
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean isValidAuthKey() throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		int i = ThreadLocalRandom.current().nextInt(SESSIONS);
+		return authService.isValidAuthKey(authKeys[i], users[i]);
+	}
+
+	/**
+	 * Sliding expiry - the same map lookup, plus a store write once per half timeout per key
+	 */
+	@Benchmark
+	@Threads(4)
+	public boolean isValidAuthKey_slidingExpiry() throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		int i = ThreadLocalRandom.current().nextInt(SESSIONS);
+		return slidingAuthService.isValidAuthKey(slidingAuthKeys[i], users[i]);
+	}
+
+	@Benchmark
+	public String newAuthKey_signedToken() {
+		return tokenAuthService.newAuthKey(ThreadLocalRandom.current().nextLong(SESSIONS));
+	}
+
+	/**
+	 * Token mode - an HMAC per check instead of a map lookup
+	 */
+	@Benchmark
+	@Threads(4)
+	public boolean isValidAuthKey_signedToken() throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		int i = ThreadLocalRandom.current().nextInt(SESSIONS);
+		return tokenAuthService.isValidAuthKey(tokens[i], users[i]);
+	}
+
+	/**
+	 * Validation under contention with logins writing to the same store
+	 */
+	@Benchmark
+	@Group("loginsAndValidation")
+	@GroupThreads(3)
+	public boolean isValidAuthKey_withConcurrentLogins() throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		return isValidAuthKey();
+	}
+
+	@Benchmark
+	@Group("loginsAndValidation")
+	@GroupThreads(1)
+	public String newAuthKey_withConcurrentValidation() {
+		return newAuthKey();
+	}
+}
@@ -0,0 +1,99 @@
+package com.jingle.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import com.jingle.Server;
+import com.jingle.models.LoginResult;
+import com.jingle.models.PasswordHash;
+import com.jingle.models.User;
+import com.jingle.models.UserProfile;
+import com.jingle.repositories.UserRepository;
+
+/**
+ * Throughput of the /user and /login flows with many request threads, as the connection pool grows -
+ * to find the pool size past which more connections stop helping.
+ * The UserCache is off so every GET reads the database, and each user has logged in once, so logins
+ * are served by the LoginCache (a lookup and a new auth key) rather than bound by the password hash
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+public class ConnectionPoolBenchmark {
+
+	private static final int USERS = 64;
+	private static final char[] PASSWORD = "jingle123".toCharArray();
+
+	@Param({"2", "4", "8", "16", "32"})
+	private int poolSize;
+
+	private ConfigurableApplicationContext context;
+	private UserControllerHelper apiHelper;
+
+	private final List<User> users = new ArrayList<User>();
+
+	@Setup
+	public void setup() throws Exception {
+		context = new SpringApplicationBuilder(Server.class)
+						.web(WebApplicationType.NONE)
+						.properties("logging.level.root=WARN")
+						// As arguments, so they override application.properties
+						.run("--jingle.user-cache.max-size=0",
+							 "--spring.datasource.hikari.maximum-pool-size=" + poolSize,
+							 "--spring.datasource.hikari.minimum-idle=" + poolSize);
+
+		apiHelper = context.getBean(UserControllerHelper.class);
+
+		// One hash shared by every user, rather than USERS hashes
+		PasswordHash password = context.getBean(AuthService.class).hashPassword(PASSWORD);
+		UserRepository userRepository = context.getBean(UserRepository.class);
+		UsernameFilter usernameFilter = context.getBean(UsernameFilter.class);
+		List<CompletableFuture<?>> logins = new ArrayList<CompletableFuture<?>>();
+
+		for(int i = 0; i < USERS; i++) {
+			User user = new User("benchPool" + i, "Jingle", "Bells", "benchPool" + i + "@jingle.com", null);
+			user.setPassword(password);
+			usernameFilter.add(user.getUsername());
+
+			users.add(userRepository.save(user));
+		}
+
+		for(User user : users) {
+			logins.add(apiHelper.loginUser(user.getUsername(), PASSWORD.clone()));
+		}
+
+		CompletableFuture.allOf(logins.toArray(new CompletableFuture<?>[0])).join();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	private User randomUser() {
+		return users.get(ThreadLocalRandom.current().nextInt(USERS));
+	}
+
+	@Benchmark
+	public ResponseEntity<UserProfile> getUser() {
+		return apiHelper.getUser(randomUser().getId(), null);
+	}
+
+	@Benchmark
+	public ResponseEntity<LoginResult> login() throws Exception {
+		return apiHelper.loginUser(randomUser().getUsername(), PASSWORD.clone()).join();
+	}
+}
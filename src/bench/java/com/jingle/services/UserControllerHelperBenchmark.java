@@ -0,0 +1,122 @@
+package com.jingle.services;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import com.jingle.Server;
+import com.jingle.models.LoginResult;
+import com.jingle.models.User;
+import com.jingle.models.UserProfile;
+
+/**
+ * End-to-end benchmarks of the UserControllerHelper flows against the
+ * application's in-memory H2 database (no web server)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserControllerHelperBenchmark {
+
+	private static final char[] PASSWORD = "jingle123".toCharArray();
+
+	private ConfigurableApplicationContext context;
+	private UserControllerHelper apiHelper;
+	private LoginCache loginCache;
+
+	private final AtomicLong counter = new AtomicLong();
+	private Long userId;
+	private String authKey;
+
+	@Setup
+	public void setup() throws Exception {
+		context = new SpringApplicationBuilder(Server.class)
+						.web(WebApplicationType.NONE)
+						.properties("logging.level.root=WARN")
+						.run();
+
+		apiHelper = context.getBean(UserControllerHelper.class);
+		loginCache = context.getBean(LoginCache.class);
+
+		userId = apiHelper.saveUser(new User("benchUser", "Jingle", "Bells", "bench@jingle.com", null), PASSWORD.clone()).join().getBody().getId();
+		authKey = apiHelper.loginUser("benchUser", PASSWORD.clone()).join().getBody().getAuthKey();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public ResponseEntity<UserProfile> save() {
+		long n = counter.incrementAndGet();
+		return apiHelper.saveUser(new User("benchSave" + n, "Jingle", "Bells", "benchSave" + n + "@jingle.com", null), PASSWORD.clone()).join();
+	}
+
+	/**
+	 * Repeat login with the same password - served by the LoginCache after the first
+	 */
+	@Benchmark
+	public ResponseEntity<LoginResult> login() throws Exception {
+		return apiHelper.loginUser("benchUser", PASSWORD.clone()).join();
+	}
+
+	/**
+	 * Login that has to hash the password
+	 */
+	@Benchmark
+	public ResponseEntity<LoginResult> loginUncached() throws Exception {
+		loginCache.invalidate(userId);
+		return apiHelper.loginUser("benchUser", PASSWORD.clone()).join();
+	}
+
+	/**
+	 * Wrong password - the hash still has to be computed, then the rejection is turned into a 401
+	 */
+	@Benchmark
+	public ResponseEntity<?> loginWrongPassword() {
+		return rejectedLogin("benchUser", "jingle124".toCharArray());
+	}
+
+	/**
+	 * Unknown username - no query, but still a hash, so it costs about as much as loginWrongPassword
+	 */
+	@Benchmark
+	public ResponseEntity<?> loginUnknownUser() {
+		return rejectedLogin("benchNobody", PASSWORD.clone());
+	}
+
+	private ResponseEntity<?> rejectedLogin(String username, char[] password) {
+		try {
+			return apiHelper.loginUser(username, password).join();
+		} catch(CompletionException ex) {
+			return apiHelper.exceptionHandler(null, (Exception)ex.getCause());
+		} catch(Exception ex) {
+			return apiHelper.exceptionHandler(null, ex);
+		}
+	}
+
+	@Benchmark
+	public ResponseEntity<UserProfile> edit() throws Exception {
+		return apiHelper.editUser(userId, authKey, null, "Jingle" + counter.incrementAndGet(), null, null, null).join();
+	}
+
+	@Benchmark
+	public ResponseEntity<UserProfile> getById() {
+		return apiHelper.getUser(userId, null);
+	}
+
+	@Benchmark
+	public ResponseEntity<UserProfile> getByUsername() {
+		return apiHelper.getUser(null, "benchUser");
+	}
+}
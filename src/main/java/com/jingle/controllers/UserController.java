@@ -1,11 +1,13 @@
 package com.jingle.controllers;
 
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.security.auth.login.FailedLoginException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
@@ -13,8 +15,15 @@ import org.springframework.web.bind.annotation.*;
 
 import com.jingle.exceptions.ExpiredAuthKeyException;
 import com.jingle.exceptions.InvalidAuthKeyException;
+import com.jingle.models.LoginResult;
 import com.jingle.models.User;
+import com.jingle.models.UserBatch;
+import com.jingle.models.UserPage;
+import com.jingle.models.UserProfile;
+import com.jingle.services.BulkSignupHelper;
+import com.jingle.services.LoginRateLimiter;
 import com.jingle.services.UserControllerHelper;
+import com.jingle.services.UserListHelper;
 
 @RestController
 public class UserController {
@@ -23,8 +32,20 @@ public class UserController {
 	private UserControllerHelper apiHelper;
 	
 	@Autowired
-	UserController(UserControllerHelper apiHelper) {
+	private BulkSignupHelper bulkSignupHelper;
+	
+	@Autowired
+	private UserListHelper userListHelper;
+	
+	@Autowired
+	private LoginRateLimiter loginRateLimiter;
+	
+	@Autowired
+	UserController(UserControllerHelper apiHelper, BulkSignupHelper bulkSignupHelper, UserListHelper userListHelper, LoginRateLimiter loginRateLimiter) {
 		this.apiHelper = apiHelper;
+		this.bulkSignupHelper = bulkSignupHelper;
+		this.userListHelper = userListHelper;
+		this.loginRateLimiter = loginRateLimiter;
 	}
 	
 	@ExceptionHandler(Exception.class)
@@ -34,43 +55,77 @@ public class UserController {
 	
 	/**
 	 * Save a new user to the database
+	 * Completes asynchronously once the password has been hashed. Rate limited per client IP
 	 */
 	@RequestMapping(value = "/signup", method = RequestMethod.POST)
-	public ResponseEntity<User> signUp(@RequestParam(value = "username") String username,
+	public CompletableFuture<ResponseEntity<UserProfile>> signUp(@RequestParam(value = "username") String username,
                                        @RequestParam(value = "firstname") String firstName,
                                        @RequestParam(value = "lastname") String lastName,
                                        @RequestParam(value = "email") String emailAddress,
-                                       @RequestParam(value = "password") String password) throws NoSuchAlgorithmException, InvalidKeySpecException {
+                                       @RequestParam(value = "password") String password,
+                                       HttpServletRequest request) {
+		
+		User userData = new User(username, firstName, lastName, emailAddress, null);
 		
-		User userData = new User(username, firstName, lastName, emailAddress, password.getBytes());
+		loginRateLimiter.checkSignup(request.getRemoteAddr(), apiHelper.wouldHash(password));
 		
-		return apiHelper.saveUser(userData);
+		return apiHelper.saveUser(userData, password.toCharArray());
+	}
+	
+	/**
+	 * Save many new users at once, from a text/csv or application/x-ndjson body. Admin only - the Admin-Key
+	 * header must hold jingle.bulk-signup.admin-key - and rate limited per client IP like /signup.
+	 * The body is streamed - rows are read, hashed and inserted a chunk at a time,
+	 * and an NDJSON result line per row is sent back as each chunk completes
+	 */
+	@RequestMapping(value = "/signup/bulk", method = RequestMethod.POST)
+	public void bulkSignUp(@RequestHeader(value = "Admin-Key", required = false) String adminKey,
+						   @RequestHeader(value = "Content-Type") String contentType,
+						   HttpServletRequest request,
+						   HttpServletResponse response) throws IOException, InvalidAuthKeyException {
+		
+		// Its rows are hashed on a pool of their own, so a rejection saves the shared pool nothing
+		loginRateLimiter.checkSignup(request.getRemoteAddr(), false);
+		bulkSignupHelper.checkAdminKey(adminKey);
+		bulkSignupHelper.checkContentType(contentType);
+		
+		bulkSignupHelper.saveUsers(request.getInputStream(), contentType, () -> {
+			response.setStatus(HttpStatus.OK.value());
+			response.setContentType(BulkSignupHelper.APPLICATION_NDJSON.toString());
+			
+			return response.getOutputStream();
+		});
 	}
 	
 	/**
 	 * Login and retrieve an authentication key
+	 * Completes asynchronously once the password has been checked. Rate limited per client IP and per username
 	 */
     @RequestMapping(value = "/login", method = RequestMethod.POST)
-    public ResponseEntity<Map<String, Object>> login(@RequestParam(value = "username") String username,
-                                                     @RequestParam(value = "password") String password) throws NoSuchAlgorithmException, InvalidKeySpecException, FailedLoginException {
+    public CompletableFuture<ResponseEntity<LoginResult>> login(@RequestParam(value = "username") String username,
+                                                                @RequestParam(value = "password") String password,
+                                                                HttpServletRequest request) throws FailedLoginException {
 		
-		return apiHelper.loginUser(username, password);
+		loginRateLimiter.checkLogin(request.getRemoteAddr(), username, apiHelper.wouldHash(password));
+		
+		return apiHelper.loginUser(username, password.toCharArray());
 	}
 	
 	/**
 	 * Update a specific User object using the given parameter values.
 	 * All params are optional except for the userid and authkey params 
+	 * Completes asynchronously if a new password has to be hashed
 	 */
 	@RequestMapping(value = "/edit", method = RequestMethod.PUT)
-	public ResponseEntity<User> editUser(@RequestHeader(value = "Auth-Key") String authKey,
-										 @RequestParam(value = "userid") long userId,
-										 @RequestParam(value = "username", required = false) String username,
-										 @RequestParam(value = "firstname", required = false) String firstName,
-										 @RequestParam(value = "lastname", required = false) String lastName,
-										 @RequestParam(value = "email", required = false) String emailAddress,
-										 @RequestParam(value = "password", required = false) String password) throws NoSuchAlgorithmException, InvalidKeySpecException, ExpiredAuthKeyException, InvalidAuthKeyException {
-		
-		return apiHelper.editUser(userId, authKey, username, firstName, lastName, emailAddress, password);
+	public CompletableFuture<ResponseEntity<UserProfile>> editUser(@RequestHeader(value = "Auth-Key") String authKey,
+															@RequestParam(value = "userid") long userId,
+															@RequestParam(value = "username", required = false) String username,
+															@RequestParam(value = "firstname", required = false) String firstName,
+															@RequestParam(value = "lastname", required = false) String lastName,
+															@RequestParam(value = "email", required = false) String emailAddress,
+															@RequestParam(value = "password", required = false) String password) throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		
+		return apiHelper.editUser(userId, authKey, username, firstName, lastName, emailAddress, password == null ? null : password.toCharArray());
 	}
 	
 	/**
@@ -89,11 +144,54 @@ public class UserController {
 	 * taking preference if both are passed)
 	 */
 	@RequestMapping(value = "/user", method = RequestMethod.GET)
-	public ResponseEntity<User> getUser(@RequestParam(value = "userid", required = false) Long userId,
+	public ResponseEntity<UserProfile> getUser(@RequestParam(value = "userid", required = false) Long userId,
 										@RequestParam(value = "username", required = false) String username) {
 		
 		return apiHelper.getUser(userId, username);
 	}
+	
+	/**
+	 * Return many User objects at once
+	 * Takes a comma-separated list of userids and/or usernames - any that don't exist
+	 * are listed in missingIds/missingUsernames instead
+	 */
+	@RequestMapping(value = "/users/batch", method = RequestMethod.GET)
+	public ResponseEntity<UserBatch> getUsers(@RequestParam(value = "userids", required = false) List<Long> userIds,
+											  @RequestParam(value = "usernames", required = false) List<String> usernames) {
+		
+		return apiHelper.getUsers(userIds, usernames);
+	}
+	
+	/**
+	 * Return a page of User objects, in userid order. Admin only, like /signup/bulk.
+	 * Pass the nextAfter value from one page as the after param to get the next
+	 */
+	@RequestMapping(value = "/users", method = RequestMethod.GET)
+	public ResponseEntity<UserPage> listUsers(@RequestHeader(value = "Admin-Key", required = false) String adminKey,
+											  @RequestParam(value = "after", defaultValue = "0") long afterId,
+											  @RequestParam(value = "limit", defaultValue = "100") int limit) throws InvalidAuthKeyException {
+		
+		bulkSignupHelper.checkAdminKey(adminKey);
+		
+		return userListHelper.listUsers(afterId, limit);
+	}
+	
+	/**
+	 * Stream every User object (optionally only those after a given userid), in userid order,
+	 * as application/x-ndjson - one JSON object per line. Admin only, like /signup/bulk
+	 */
+	@RequestMapping(value = "/users/export", method = RequestMethod.GET)
+	public void exportUsers(@RequestHeader(value = "Admin-Key", required = false) String adminKey,
+							@RequestParam(value = "after", defaultValue = "0") long afterId,
+							HttpServletResponse response) throws IOException, InvalidAuthKeyException {
+		
+		bulkSignupHelper.checkAdminKey(adminKey);
+		
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(BulkSignupHelper.APPLICATION_NDJSON.toString());
+		
+		userListHelper.exportUsers(afterId, response.getOutputStream());
+	}
 
 	/**
 	 * Default path
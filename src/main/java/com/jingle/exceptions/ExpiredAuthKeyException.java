@@ -1,10 +1,13 @@
 package com.jingle.exceptions;
 
+/**
+ * An everyday outcome rather than a bug - thrown without a stack trace
+ */
 public class ExpiredAuthKeyException extends Exception {
 
 	private static final long serialVersionUID = -7489733208406011453L;
 
-	public String getMessage() {
-		return "Expired auth key";
+	public ExpiredAuthKeyException() {
+		super("Expired auth key", null, false, false);
 	}
 }
@@ -1,10 +1,13 @@
 package com.jingle.exceptions;
 
+/**
+ * An everyday outcome rather than a bug - thrown without a stack trace
+ */
 public class InvalidAuthKeyException extends Exception {
 
 	private static final long serialVersionUID = -6875269451301987197L;
 
-	public String getMessage() {
-		return "Invalid auth key";
+	public InvalidAuthKeyException() {
+		super("Invalid auth key", null, false, false);
 	}
 }
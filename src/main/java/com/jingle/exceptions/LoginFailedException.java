@@ -0,0 +1,21 @@
+package com.jingle.exceptions;
+
+import javax.security.auth.login.FailedLoginException;
+
+/**
+ * Wrong username or password. Doesn't say which, and (being an everyday
+ * outcome rather than a bug) is thrown without a stack trace
+ */
+public class LoginFailedException extends FailedLoginException {
+
+	private static final long serialVersionUID = 4466094719826407813L;
+
+	public LoginFailedException() {
+		super("Incorrect username or password");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
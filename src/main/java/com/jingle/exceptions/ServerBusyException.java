@@ -0,0 +1,13 @@
+package com.jingle.exceptions;
+
+/**
+ * Thrown without a stack trace - when the server is overloaded is the worst time to build one
+ */
+public class ServerBusyException extends RuntimeException {
+
+	private static final long serialVersionUID = 3018624786420573712L;
+
+	public ServerBusyException() {
+		super("Server busy, please try again shortly", null, false, false);
+	}
+}
@@ -0,0 +1,21 @@
+package com.jingle.exceptions;
+
+/**
+ * A client has used up its rate limit - thrown without a stack trace, as it is
+ * most likely to be thrown while the server is under attack
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+	private static final long serialVersionUID = -4391578841092755017L;
+
+	private final long retryAfterSeconds;
+
+	public TooManyRequestsException(long retryAfterSeconds) {
+		super("Too many requests, please try again later", null, false, false);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
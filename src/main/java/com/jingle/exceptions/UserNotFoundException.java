@@ -0,0 +1,27 @@
+package com.jingle.exceptions;
+
+/**
+ * No user with the given userid or username. Still an IllegalArgumentException (it is
+ * the caller's mistake), but thrown without a stack trace
+ */
+public class UserNotFoundException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = -2150527040622316390L;
+
+	private UserNotFoundException(String message) {
+		super(message);
+	}
+
+	public static UserNotFoundException forUserId(long userId) {
+		return new UserNotFoundException("User with userid (" + userId + ") doesn't exist");
+	}
+
+	public static UserNotFoundException forUsername(String username) {
+		return new UserNotFoundException("User with username (" + username + ") doesn't exist");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
@@ -0,0 +1,104 @@
+package com.jingle.metrics;
+
+import org.springframework.stereotype.Component;
+
+import com.jingle.services.HashWorkerPool;
+import com.jingle.services.LoginCache;
+import com.jingle.services.LoginRateLimiter;
+import com.jingle.services.UserCache;
+import com.jingle.services.UsernameFilter;
+import com.jingle.sessions.JdbcSessionStore;
+import com.jingle.sessions.SessionStore;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the counts the services already keep as gauges and counters.
+ * Nothing here runs on a request - each value is read from its service when scraped
+ *
+ */
+@Component
+public class JingleMetrics implements MeterBinder {
+
+	private final SessionStore sessionStore;
+	private final HashWorkerPool hashWorkerPool;
+	private final UserCache userCache;
+	private final LoginCache loginCache;
+	private final UsernameFilter usernameFilter;
+	private final LoginRateLimiter loginRateLimiter;
+
+	JingleMetrics(SessionStore sessionStore,
+				  HashWorkerPool hashWorkerPool,
+				  UserCache userCache,
+				  LoginCache loginCache,
+				  UsernameFilter usernameFilter,
+				  LoginRateLimiter loginRateLimiter) {
+		this.sessionStore = sessionStore;
+		this.hashWorkerPool = hashWorkerPool;
+		this.userCache = userCache;
+		this.loginCache = loginCache;
+		this.usernameFilter = usernameFilter;
+		this.loginRateLimiter = loginRateLimiter;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("jingle.sessions.active", sessionStore, SessionStore::size)
+			 .description("Auth key sessions held (token mode keeps none)")
+			 .register(registry);
+
+		if(sessionStore instanceof JdbcSessionStore) {
+			FunctionCounter.builder("jingle.sessions.failed.flushes", (JdbcSessionStore)sessionStore, JdbcSessionStore::getFailedFlushes)
+						   .description("Session writes the database rejected")
+						   .register(registry);
+		}
+
+		Gauge.builder("jingle.hash.pool.threads", hashWorkerPool, HashWorkerPool::getPoolSize)
+			 .register(registry);
+		Gauge.builder("jingle.hash.pool.queued", hashWorkerPool, HashWorkerPool::getQueuedTasks)
+			 .description("Password hashes waiting for a thread")
+			 .register(registry);
+
+		Gauge.builder("jingle.user.cache.size", userCache, UserCache::size)
+			 .register(registry);
+		FunctionCounter.builder("jingle.user.cache.requests", userCache, UserCache::getHits)
+					   .tag("result", "hit")
+					   .register(registry);
+		FunctionCounter.builder("jingle.user.cache.requests", userCache, UserCache::getMisses)
+					   .tag("result", "miss")
+					   .register(registry);
+		FunctionCounter.builder("jingle.user.cache.evictions", userCache, UserCache::getEvictions)
+					   .register(registry);
+
+		Gauge.builder("jingle.login.cache.size", loginCache, LoginCache::size)
+			 .register(registry);
+		FunctionCounter.builder("jingle.login.cache.requests", loginCache, LoginCache::getHits)
+					   .tag("result", "hit")
+					   .description("Logins that did (hit) and didn't (miss) skip the password hash")
+					   .register(registry);
+		FunctionCounter.builder("jingle.login.cache.requests", loginCache, LoginCache::getMisses)
+					   .tag("result", "miss")
+					   .register(registry);
+
+		FunctionCounter.builder("jingle.username.filter.insertions", usernameFilter, UsernameFilter::getInsertions)
+					   .register(registry);
+		FunctionCounter.builder("jingle.username.filter.rejections", usernameFilter, UsernameFilter::getRejections)
+					   .description("Username lookups turned away without a query")
+					   .register(registry);
+		Gauge.builder("jingle.username.filter.expected.users", usernameFilter, UsernameFilter::getExpectedUsers)
+			 .register(registry);
+
+		FunctionCounter.builder("jingle.rate.limit.rejections", loginRateLimiter, LoginRateLimiter::getRejectedLogins)
+					   .tag("endpoint", "login")
+					   .register(registry);
+		FunctionCounter.builder("jingle.rate.limit.rejections", loginRateLimiter, LoginRateLimiter::getRejectedSignups)
+					   .tag("endpoint", "signup")
+					   .register(registry);
+		FunctionCounter.builder("jingle.rate.limit.hashes.saved", loginRateLimiter, LoginRateLimiter::getHashesSaved)
+					   .description("Password hashes avoided by rejecting requests over the rate limit")
+					   .register(registry);
+	}
+}
@@ -0,0 +1,65 @@
+package com.jingle.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every call to UserRepository as jingle.repository.calls, tagged with the method name
+ * (and the exception, for calls that throw). Timers are looked up once per method (and exception
+ * class), so a call costs two clock reads and a record
+ *
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+	private static final String NAME = "jingle.repository.calls";
+
+	private final MeterRegistry registry;
+
+	private final Map<Method, Timer> timers = new ConcurrentHashMap<Method, Timer>();
+	private final Map<Method, Map<Class<?>, Timer>> failureTimers = new ConcurrentHashMap<Method, Map<Class<?>, Timer>>();
+
+	RepositoryMetricsAspect(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Around("this(com.jingle.repositories.UserRepository) && execution(public * *(..)) && !execution(* java.lang.Object.*(..))")
+	public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+		Method method = ((MethodSignature)joinPoint.getSignature()).getMethod();
+		long start = System.nanoTime();
+
+		try {
+
+			Object result = joinPoint.proceed();
+			timers.computeIfAbsent(method, m -> timer(m, "none")).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+			return result;
+
+		} catch(Throwable ex) {
+			failureTimers.computeIfAbsent(method, m -> new ConcurrentHashMap<Class<?>, Timer>())
+						 .computeIfAbsent(ex.getClass(), exceptionClass -> timer(method, exceptionClass.getSimpleName()))
+						 .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			throw ex;
+		}
+	}
+
+	private Timer timer(Method method, String exception) {
+		return Timer.builder(NAME)
+					.description("Calls to UserRepository")
+					.tag("method", method.getName())
+					.tag("exception", exception)
+					.register(registry);
+	}
+}
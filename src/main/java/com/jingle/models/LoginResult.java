@@ -0,0 +1,24 @@
+package com.jingle.models;
+
+/**
+ * Result of a successful login - the user's id and their new authentication key
+ *
+ */
+public final class LoginResult {
+	
+	private final long id;
+	private final String authKey;
+	
+	public LoginResult(long id, String authKey) {
+		this.id = id;
+		this.authKey = authKey;
+	}
+	
+	public long getId() {
+		return this.id;
+	}
+	
+	public String getAuthKey() {
+		return this.authKey;
+	}
+}
@@ -0,0 +1,53 @@
+package com.jingle.models;
+
+/**
+ * Models a stored password hash, together with the parameters it was made with -
+ * the PBKDF2 algorithm, the number of iterations and the salt.
+ * Hashes from before parameters were stored have no salt: they were made with
+ * the legacy parameters, and a salt taken from the password itself
+ *
+ */
+public final class PasswordHash {
+
+	public static final String LEGACY_ALGORITHM = "PBKDF2WithHmacSHA1";
+	public static final int LEGACY_ITERATIONS = 65536;
+
+	private final String algorithm;
+	private final int iterations;
+	private final byte[] salt;
+	private final byte[] hash;
+
+	public PasswordHash(String algorithm, int iterations, byte[] salt, byte[] hash) {
+		this.algorithm = algorithm;
+		this.iterations = iterations;
+		this.salt = salt;
+		this.hash = hash;
+	}
+
+	/**
+	 * A hash made with the legacy parameters
+	 */
+	public static PasswordHash legacy(byte[] hash) {
+		return new PasswordHash(LEGACY_ALGORITHM, LEGACY_ITERATIONS, null, hash);
+	}
+
+	public String getAlgorithm() {
+		return this.algorithm;
+	}
+
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	public byte[] getSalt() {
+		return this.salt;
+	}
+
+	public byte[] getHash() {
+		return this.hash;
+	}
+
+	public boolean isLegacy() {
+		return this.salt == null;
+	}
+}
@@ -1,32 +1,63 @@
 package com.jingle.models;
 
+import java.util.Locale;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
- * Models a User object
+ * Models a User object. The table is created by the Flyway migrations in db/migration -
+ * any change to the mapping needs a new migration.
+ * Usernames and email addresses are looked up case-insensitively, through copies normalized
+ * by their setters (see normalize(...)) - the unique indexes are on those copies, so "Bob" and "bob"
+ * are the same user, and a lookup is an index seek rather than a lower(...) scan.
+ * Users are never written to responses - the endpoints return a UserProfile
  *
  */
 @Entity
+@Table(name = "users", uniqueConstraints = {
+		@UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "usernameNormalized"),
+		@UniqueConstraint(name = User.EMAIL_ADDRESS_CONSTRAINT, columnNames = "emailAddressNormalized")
+})
 public class User {
 	
+	public static final String USERNAME_CONSTRAINT = "uk_users_username";
+	public static final String EMAIL_ADDRESS_CONSTRAINT = "uk_users_email_address";
+	
+	// Ids are reserved from user_seq in blocks (see PooledSequenceGenerator), so inserts can be batched
 	@Id
 	@Column(unique = true)
-    @GeneratedValue(strategy=GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+	@GenericGenerator(name = "user_seq", strategy = "com.jingle.repositories.PooledSequenceGenerator", parameters = {
+			@Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "user_seq"),
+			@Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50"),
+			@Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")
+	})
 	@NotNull
 	private Long id;
 	
-	@Column(unique = true)
 	private String username;
+	private String usernameNormalized;
 	
 	private String firstName;
 	private String lastName;
 	
-	@Column(unique = true)
 	private String emailAddress;
+	private String emailAddressNormalized;
 	
 	private byte[] passwordHash;
 	
+	// How passwordHash was made - all null for hashes made before these were stored
+	private String passwordAlgorithm;
+	private Integer passwordIterations;
+	private byte[] passwordSalt;
+	
 	protected User() {};
 	
 	public User(String username, String firstName, String lastName, String emailAddress, byte[] passwordHash) {
@@ -46,17 +77,30 @@ public class User {
 	}
 	
 	public void setUsername(String username) {
+		checkUsername(username);
+		
+		this.username = username;
+		this.usernameNormalized = normalize(username);
+	}
+	
+	public static void checkUsername(String username) {
 		if(username == null || username.isEmpty()) {
 			throw new IllegalArgumentException("Username cannot be blank");
 		}
-		
-		this.username = username;
 	}
 	
 	public String getUsername() {
 		return this.username;
 	}
 	
+	/**
+	 * The username as it is looked up - see normalize(...)
+	 */
+	@JsonIgnore
+	public String getUsernameNormalized() {
+		return this.usernameNormalized;
+	}
+	
 	public void setFirstName(String firstName) {
 		this.firstName = firstName;
 	}
@@ -74,22 +118,64 @@ public class User {
 	}
 	
 	public void setEmailAddress(String emailAddress) {
+		checkEmailAddress(emailAddress);
+		
+		this.emailAddress = emailAddress;
+		this.emailAddressNormalized = normalize(emailAddress);
+	}
+	
+	public static void checkEmailAddress(String emailAddress) {
 		if(emailAddress == null || emailAddress.isEmpty()) {
 			throw new IllegalArgumentException("Email address cannot be blank");
 		}
-		
-		this.emailAddress = emailAddress;
 	}
 	
 	public String getEmailAddress() {
 		return this.emailAddress;
 	}
 	
+	@JsonIgnore
+	public String getEmailAddressNormalized() {
+		return this.emailAddressNormalized;
+	}
+	
+	/**
+	 * The form usernames and email addresses are stored and compared in - lower case, in the root
+	 * locale so it doesn't change with the server's. Returns null for null
+	 */
+	public static String normalize(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+	
 	public void setPasswordHash(byte[] passHash) {
 		this.passwordHash = passHash;
 	}
 	
+	@JsonIgnore
 	public byte[] getPassHash() {
 		return this.passwordHash;
 	}
+	
+	public void setPassword(PasswordHash password) {
+		this.passwordHash = password.getHash();
+		this.passwordAlgorithm = password.getAlgorithm();
+		this.passwordIterations = password.getIterations();
+		this.passwordSalt = password.getSalt();
+	}
+	
+	/**
+	 * The password hash with the parameters it was made with, or null if there isn't one
+	 */
+	@JsonIgnore
+	public PasswordHash getPassword() {
+		if(this.passwordHash == null) {
+			return null;
+		}
+		
+		if(this.passwordSalt == null) {
+			return PasswordHash.legacy(this.passwordHash);
+		}
+		
+		return new PasswordHash(this.passwordAlgorithm, this.passwordIterations, this.passwordSalt, this.passwordHash);
+	}
 }
@@ -0,0 +1,33 @@
+package com.jingle.models;
+
+import java.util.List;
+
+/**
+ * Result of a batch user lookup - the users that were found (each once, in the order
+ * they were asked for), plus the userids and usernames that don't exist
+ *
+ */
+public final class UserBatch {
+	
+	private final List<UserProfile> users;
+	private final List<Long> missingIds;
+	private final List<String> missingUsernames;
+	
+	public UserBatch(List<UserProfile> users, List<Long> missingIds, List<String> missingUsernames) {
+		this.users = users;
+		this.missingIds = missingIds;
+		this.missingUsernames = missingUsernames;
+	}
+	
+	public List<UserProfile> getUsers() {
+		return this.users;
+	}
+	
+	public List<Long> getMissingIds() {
+		return this.missingIds;
+	}
+	
+	public List<String> getMissingUsernames() {
+		return this.missingUsernames;
+	}
+}
@@ -0,0 +1,27 @@
+package com.jingle.models;
+
+import java.util.List;
+
+/**
+ * One page of users, in id order. nextAfter is the cursor for the following page
+ * (pass it back as the after param), or null if this is the last page
+ *
+ */
+public final class UserPage {
+	
+	private final List<UserProfile> users;
+	private final Long nextAfter;
+	
+	public UserPage(List<UserProfile> users, Long nextAfter) {
+		this.users = users;
+		this.nextAfter = nextAfter;
+	}
+	
+	public List<UserProfile> getUsers() {
+		return this.users;
+	}
+	
+	public Long getNextAfter() {
+		return this.nextAfter;
+	}
+}
@@ -0,0 +1,118 @@
+package com.jingle.models;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * The public part of a User - what the endpoints return. The read endpoints select only these
+ * columns (see UserRepository's profile queries), so the password hash is never even read for them.
+ * Serialized by hand rather than through getters, with the field names encoded once
+ *
+ */
+@JsonSerialize(using = UserProfile.Serializer.class)
+public final class UserProfile {
+
+	private final Long id;
+	private final String username;
+	private final String usernameNormalized;
+	private final String firstName;
+	private final String lastName;
+	private final String emailAddress;
+
+	/**
+	 * Used by the profile queries' select new ... expressions
+	 */
+	public UserProfile(Long id, String username, String firstName, String lastName, String emailAddress) {
+		this.id = id;
+		this.username = username;
+		this.usernameNormalized = User.normalize(username);
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.emailAddress = emailAddress;
+	}
+
+	public static UserProfile of(User user) {
+		return new UserProfile(user.getId(), user.getUsername(), user.getFirstName(), user.getLastName(), user.getEmailAddress());
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public String getUsername() {
+		return this.username;
+	}
+
+	/**
+	 * Not serialized - see User.normalize(...)
+	 */
+	public String getUsernameNormalized() {
+		return this.usernameNormalized;
+	}
+
+	public String getFirstName() {
+		return this.firstName;
+	}
+
+	public String getLastName() {
+		return this.lastName;
+	}
+
+	public String getEmailAddress() {
+		return this.emailAddress;
+	}
+
+	/**
+	 * Writes the same fields, in the same order, that User's getters used to produce
+	 */
+	static final class Serializer extends StdSerializer<UserProfile> {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final SerializableString ID = new SerializedString("id");
+		private static final SerializableString USERNAME = new SerializedString("username");
+		private static final SerializableString FIRST_NAME = new SerializedString("firstName");
+		private static final SerializableString LAST_NAME = new SerializedString("lastName");
+		private static final SerializableString EMAIL_ADDRESS = new SerializedString("emailAddress");
+
+		Serializer() {
+			super(UserProfile.class);
+		}
+
+		@Override
+		public void serialize(UserProfile profile, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			generator.writeStartObject();
+
+			generator.writeFieldName(ID);
+
+			if(profile.id == null) {
+				generator.writeNull();
+			} else {
+				generator.writeNumber(profile.id);
+			}
+
+			writeString(generator, USERNAME, profile.username);
+			writeString(generator, FIRST_NAME, profile.firstName);
+			writeString(generator, LAST_NAME, profile.lastName);
+			writeString(generator, EMAIL_ADDRESS, profile.emailAddress);
+
+			generator.writeEndObject();
+		}
+
+		private static void writeString(JsonGenerator generator, SerializableString name, String value) throws IOException {
+			generator.writeFieldName(name);
+
+			if(value == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(value);
+			}
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.jingle.repositories;
+
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Sequence generator whose allocation size can be set in configuration rather than
+ * being fixed in the mapping. Set spring.jpa.properties.jingle.id.allocation-size to
+ * reserve ids in blocks of that size - one sequence call per block instead of per insert.
+ * The sequence's increment has to be the same size (see UserSequenceCheck)
+ *
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+	
+	public static final String ALLOCATION_SIZE_SETTING = "jingle.id.allocation-size";
+	
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+		
+		Object allocationSize = serviceRegistry.getService(ConfigurationService.class).getSettings().get(ALLOCATION_SIZE_SETTING);
+		
+		if(allocationSize != null) {
+			params.setProperty(INCREMENT_PARAM, allocationSize.toString());
+		}
+		
+		super.configure(type, params, serviceRegistry);
+	}
+}
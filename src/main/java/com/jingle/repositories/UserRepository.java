@@ -1,14 +1,72 @@
 package com.jingle.repositories;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.jingle.models.User;
+import com.jingle.models.UserProfile;
 
+/**
+ * Reads that only return what the endpoints show use the profile queries, which select the
+ * UserProfile columns and nothing else - entities (with their password hash) are only loaded
+ * where the hash is needed
+ *
+ */
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
+	
+	public static final String SELECT_PROFILE = "select new com.jingle.models.UserProfile(u.id, u.username, u.firstName, u.lastName, u.emailAddress) from User u ";
+	
+	/**
+	 * Finds the user by username, ignoring case - the username must already be normalized (see User.normalize),
+	 * so the lookup is a seek on the unique index
+	 */
+	public Optional<User> findByUsernameNormalized(String usernameNormalized);
+	
+	@Query(SELECT_PROFILE + "where u.id = :id")
+	public Optional<UserProfile> findProfileById(@Param("id") long userId);
+	
+	/**
+	 * Finds the profile by normalized username (see findByUsernameNormalized)
+	 */
+	@Query(SELECT_PROFILE + "where u.usernameNormalized = :username")
+	public Optional<UserProfile> findProfileByUsernameNormalized(@Param("username") String usernameNormalized);
+	
+	/**
+	 * Finds all the given ids with a single IN query - ids that don't exist are left out
+	 */
+	@Query(SELECT_PROFILE + "where u.id in :ids")
+	public List<UserProfile> findProfilesByIdIn(@Param("ids") Collection<Long> userIds);
+	
+	/**
+	 * Finds all the given normalized usernames with a single IN query - usernames that don't exist are left out
+	 */
+	@Query(SELECT_PROFILE + "where u.usernameNormalized in :usernames")
+	public List<UserProfile> findProfilesByUsernameNormalizedIn(@Param("usernames") Collection<String> usernamesNormalized);
+	
+	/**
+	 * Keyset paging - the users with an id greater than afterId, in id order.
+	 * Seeks straight to afterId on the primary key, so later pages cost no more than the first
+	 */
+	@Query(SELECT_PROFILE + "where u.id > :after order by u.id")
+	public List<UserProfile> findProfilesByIdGreaterThan(@Param("after") long afterId, Pageable pageable);
 	
-	public Optional<User> findByUsername(String username);
+	/**
+	 * Deletes the user in a single statement (unlike deleteById, which loads it first).
+	 * Returns the number of users deleted
+	 */
+	@Modifying
+	@Transactional
+	@Query("delete from User u where u.id = :id")
+	public int deleteUserById(@Param("id") long userId);
 }
@@ -0,0 +1,35 @@
+package com.jingle.repositories;
+
+import java.util.function.Consumer;
+
+import com.jingle.models.PasswordHash;
+import com.jingle.models.UserProfile;
+
+/**
+ * Hand-written UserRepository queries that Spring Data can't derive
+ *
+ */
+public interface UserRepositoryCustom {
+	
+	/**
+	 * Updates only the non-null columns of the given user in a single statement (along with the
+	 * normalized copies of username and emailAddress).
+	 * Returns the number of users updated (0 if the user doesn't exist)
+	 */
+	public int updateUser(long userId, String username, String firstName, String lastName, String emailAddress, PasswordHash password);
+	
+	/**
+	 * Replaces the user's password hash, but only if it is still currentHash - so upgrading a hash
+	 * can never overwrite a password that was changed in the meantime.
+	 * Returns the number of users updated
+	 */
+	public int replacePassword(long userId, byte[] currentHash, PasswordHash password);
+	
+	/**
+	 * Passes the profile of every user with an id greater than afterId, in id order, to the given action.
+	 * Rows are read through a forward-only cursor fetchSize at a time and nothing is kept
+	 * in a persistence context, so memory use doesn't grow with the number of users.
+	 * Returns the number of users read
+	 */
+	public long forEachProfile(long afterId, int fetchSize, Consumer<UserProfile> action);
+}
@@ -0,0 +1,124 @@
+package com.jingle.repositories;
+
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.jingle.models.PasswordHash;
+import com.jingle.models.User;
+import com.jingle.models.UserProfile;
+
+/**
+ * Implementation of UserRepositoryCustom - picked up by Spring Data by name
+ *
+ */
+public class UserRepositoryImpl implements UserRepositoryCustom {
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+	
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Override
+	@Transactional
+	public int updateUser(long userId, String username, String firstName, String lastName, String emailAddress, PasswordHash password) {
+		
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		
+		if(username == null && firstName == null && lastName == null && emailAddress == null && password == null) {
+			// Nothing to change - just report whether the user exists
+			return entityManager.createQuery("select count(u) from User u where u.id = :id", Long.class)
+								.setParameter("id", userId)
+								.getSingleResult()
+								.intValue();
+		}
+		
+		CriteriaUpdate<User> update = builder.createCriteriaUpdate(User.class);
+		Root<User> user = update.from(User.class);
+		
+		if(username != null) {
+			update.set(user.<String>get("username"), username);
+			update.set(user.<String>get("usernameNormalized"), User.normalize(username));
+		}
+		
+		if(firstName != null) update.set(user.<String>get("firstName"), firstName);
+		
+		if(lastName != null) update.set(user.<String>get("lastName"), lastName);
+		
+		if(emailAddress != null) {
+			update.set(user.<String>get("emailAddress"), emailAddress);
+			update.set(user.<String>get("emailAddressNormalized"), User.normalize(emailAddress));
+		}
+		
+		if(password != null) {
+			update.set(user.<byte[]>get("passwordHash"), password.getHash());
+			update.set(user.<String>get("passwordAlgorithm"), password.getAlgorithm());
+			update.set(user.<Integer>get("passwordIterations"), password.getIterations());
+			update.set(user.<byte[]>get("passwordSalt"), password.getSalt());
+		}
+		
+		update.where(builder.equal(user.get("id"), userId));
+		
+		return entityManager.createQuery(update).executeUpdate();
+	}
+	
+	@Override
+	@Transactional
+	public int replacePassword(long userId, byte[] currentHash, PasswordHash password) {
+		
+		return entityManager.createQuery("update User u set u.passwordHash = :hash, u.passwordAlgorithm = :algorithm, u.passwordIterations = :iterations, u.passwordSalt = :salt "
+										 + "where u.id = :id and u.passwordHash = :currentHash")
+							.setParameter("hash", password.getHash())
+							.setParameter("algorithm", password.getAlgorithm())
+							.setParameter("iterations", password.getIterations())
+							.setParameter("salt", password.getSalt())
+							.setParameter("id", userId)
+							.setParameter("currentHash", currentHash)
+							.executeUpdate();
+	}
+	
+	@Override
+	public long forEachProfile(long afterId, int fetchSize, Consumer<UserProfile> action) {
+		
+		long count = 0;
+		
+		// A stateless session doesn't track the entities it reads, unlike the shared EntityManager
+		try(StatelessSession session = entityManagerFactory.unwrap(SessionFactory.class).openStatelessSession()) {
+			
+			// Some drivers (e.g. PostgreSQL) only stream with a fetch size when autocommit is off
+			Transaction transaction = session.beginTransaction();
+			
+			try(ScrollableResults results = session.createQuery(UserRepository.SELECT_PROFILE + "where u.id > :after order by u.id", UserProfile.class)
+												   .setParameter("after", afterId)
+												   .setFetchSize(fetchSize)
+												   .setReadOnly(true)
+												   .scroll(ScrollMode.FORWARD_ONLY)) {
+				
+				while(results.next()) {
+					action.accept((UserProfile)results.get(0));
+					count++;
+				}
+			
+			} finally {
+				// Read only - nothing to commit
+				transaction.rollback();
+			}
+		}
+		
+		return count;
+	}
+}
@@ -0,0 +1,40 @@
+package com.jingle.repositories;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops startup if user_seq's increment isn't the id allocation size PooledSequenceGenerator reserves ids with.
+ * Under pooled-lo a block bigger than the increment overlaps the next caller's block, so ids would be handed
+ * out twice - and nothing else would notice until inserts started failing
+ *
+ */
+@Component
+@DependsOn("flywayInitializer")
+public class UserSequenceCheck {
+
+	UserSequenceCheck(DataSource dataSource,
+					  @Value("${spring.jpa.properties." + PooledSequenceGenerator.ALLOCATION_SIZE_SETTING + ":50}") long allocationSize) {
+
+		// information_schema.sequences has the increment on both H2 and PostgreSQL (as text on PostgreSQL)
+		List<String> increments = new JdbcTemplate(dataSource).queryForList(
+				"select increment from information_schema.sequences where lower(sequence_name) = 'user_seq'", String.class);
+
+		if(increments.isEmpty()) {
+			throw new IllegalStateException("Sequence user_seq doesn't exist - have the migrations run?");
+		}
+
+		long increment = Long.parseLong(increments.get(0).trim());
+
+		if(increment != allocationSize) {
+			throw new IllegalStateException("Id allocation size (" + allocationSize + ") doesn't match user_seq's increment (" + increment + ") - "
+											+ "change " + PooledSequenceGenerator.ALLOCATION_SIZE_SETTING + " back, or run alter sequence user_seq increment by " + allocationSize);
+		}
+	}
+}
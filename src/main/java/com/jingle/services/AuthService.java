@@ -1,44 +1,278 @@
 package com.jingle.services;
 
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
-import java.util.Date;
-import java.util.HashMap;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
 
 import com.jingle.exceptions.*;
+import com.jingle.models.PasswordHash;
 import com.jingle.models.User;
+import com.jingle.sessions.InMemorySessionStore;
+import com.jingle.sessions.Session;
+import com.jingle.sessions.SessionStore;
+import com.jingle.sessions.SignedTokens;
+import com.jingle.tracing.Span;
+import com.jingle.tracing.Tracer;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+@Service
 public class AuthService {
 	
-	private Map<String, Long> authKeys = new HashMap<String, Long>();
-	private Map<String, Date> authKeyExpires = new HashMap<String, Date>();
+	private final SessionStore sessionStore;
+	
+	// Only set in token mode - auth keys are then signed tokens, and sessionStore is unused
+	private final SignedTokens signedTokens;
+	
+	// Token mode only - userid -> time until which all of that user's tokens are rejected
+	private final Map<Long, Long> revokedUsers = new ConcurrentHashMap<Long, Long>();
+	private final AtomicLong longestAuthTimeout = new AtomicLong();
+	
+	// Session mode only - whether a key that is used gets extended by another authTimeout
+	private final boolean slidingExpiry;
 	
-	// Default authentication key timeout of 20 mins
+	// No auth key lasts longer than this after it was issued, however often it is used
+	private final long maxLifetime;
+	
+	// Default authentication key timeout of 20 mins, and max lifetime of 8 hours
 	private final long DEFAULT_AUTH_TIMEOUT = 1200000;
+	public static final long DEFAULT_MAX_LIFETIME = 28800000;
 	
 	private final int MIN_PASSWORD_LENGTH = 8;
 	
+	private static final int HASH_KEY_LENGTH = 128;
+	private static final int HASH_SALT_LENGTH = 16;
+	
+	// Iterations timed by calibrateIterations
+	private static final int CALIBRATION_ITERATIONS = 10000;
+	
+	// Parameters new password hashes are made with - stored hashes made with anything weaker are upgraded on login
+	private final String hashAlgorithm;
+	private final int hashIterations;
+	
+	// Has the current parameters but matches no password - see matchesNoUser
+	private final PasswordHash noUserHash;
+	
+	private final PasswordHasher passwordHasher = new PasswordHasher();
+	// Salts and session auth keys - both must be unpredictable
+	private final SecureRandom secureRandom = new SecureRandom();
+	
+	// jingle.password.hash - new hashes, and hashes made to check a password
+	private final Timer hashTimer;
+	private final Timer verifyTimer;
+	
+	public AuthService() {
+		this(new InMemorySessionStore());
+	}
+	
+	@Autowired
+	public AuthService(SessionStore sessionStore,
+					   @Value("${jingle.auth.mode:session}") String authMode,
+					   @Value("${jingle.auth.token.keys:}") String tokenKeys,
+					   @Value("${jingle.auth.token.active-key:}") String activeTokenKey,
+					   @Value("${jingle.auth.sliding-expiry:false}") boolean slidingExpiry,
+					   @Value("${jingle.auth.max-lifetime-ms:28800000}") long maxLifetime,
+					   @Value("${jingle.hash.algorithm:PBKDF2WithHmacSHA1}") String hashAlgorithm,
+					   @Value("${jingle.hash.iterations:65536}") int hashIterations,
+					   @Value("${jingle.hash.target-millis:0}") long hashTargetMillis,
+					   MeterRegistry meterRegistry) {
+		this(sessionStore, tokenSigner(authMode, tokenKeys, activeTokenKey), slidingExpiry, maxLifetime, hashAlgorithm,
+			 hashTargetMillis > 0 ? calibrateIterations(hashAlgorithm, hashTargetMillis, hashIterations) : hashIterations, meterRegistry);
+	}
+	
+	public AuthService(SessionStore sessionStore) {
+		this(sessionStore, false, DEFAULT_MAX_LIFETIME);
+	}
+	
+	public AuthService(SessionStore sessionStore, boolean slidingExpiry, long maxLifetime) {
+		this(sessionStore, null, slidingExpiry, maxLifetime, PasswordHash.LEGACY_ALGORITHM, PasswordHash.LEGACY_ITERATIONS, Metrics.globalRegistry);
+	}
+	
+	public AuthService(SignedTokens signedTokens) {
+		this(new InMemorySessionStore(), signedTokens, false, DEFAULT_MAX_LIFETIME, PasswordHash.LEGACY_ALGORITHM, PasswordHash.LEGACY_ITERATIONS, Metrics.globalRegistry);
+	}
+	
+	public AuthService(String hashAlgorithm, int hashIterations) {
+		this(new InMemorySessionStore(), null, false, DEFAULT_MAX_LIFETIME, hashAlgorithm, hashIterations, Metrics.globalRegistry);
+	}
+	
+	private AuthService(SessionStore sessionStore, SignedTokens signedTokens, boolean slidingExpiry, long maxLifetime, String hashAlgorithm, int hashIterations, MeterRegistry meterRegistry) {
+		if(maxLifetime < 1) throw new IllegalArgumentException("Auth key max lifetime must be at least 1ms");
+		if(hashIterations < 1) throw new IllegalArgumentException("Password hash iterations must be at least 1");
+		
+		// Fail at startup rather than on the first signup
+		PasswordHasher.checkAlgorithm(hashAlgorithm);
+		
+		this.sessionStore = sessionStore;
+		this.signedTokens = signedTokens;
+		this.slidingExpiry = slidingExpiry;
+		this.maxLifetime = maxLifetime;
+		this.hashAlgorithm = hashAlgorithm;
+		this.hashIterations = hashIterations;
+		this.noUserHash = new PasswordHash(hashAlgorithm, hashIterations, new byte[HASH_SALT_LENGTH], new byte[HASH_KEY_LENGTH / 8]);
+		this.hashTimer = hashTimer(meterRegistry, "hash");
+		this.verifyTimer = hashTimer(meterRegistry, "verify");
+	}
+	
 	/**
-	 * Gets a hash of the given password
+	 * Works out how many iterations of the given algorithm take targetMillis on this host -
+	 * the fastest of several timed runs (the first ones are slowed by JIT compilation), scaled up.
+	 * Rounded down to a thousand so small differences between restarts don't change the answer,
+	 * and never fewer than minIterations
 	 */
-	public byte[] getPasswordHash(String password) throws NoSuchAlgorithmException,	InvalidKeySpecException {
-		if(password == null || password.length() < MIN_PASSWORD_LENGTH) throw new IllegalArgumentException("Password must be a minimum of " + MIN_PASSWORD_LENGTH + " characters long");
+	static int calibrateIterations(String algorithm, long targetMillis, int minIterations) {
+		PasswordHasher hasher = new PasswordHasher();
+		char[] password = "calibration".toCharArray();
+		byte[] salt = new byte[HASH_SALT_LENGTH];
+		long fastest = Long.MAX_VALUE;
 		
+		for(int i = 0; i < 10; i++) {
+			long start = System.nanoTime();
+			hasher.hash(algorithm, password, salt, CALIBRATION_ITERATIONS, HASH_KEY_LENGTH);
+			fastest = Math.min(fastest, System.nanoTime() - start);
+		}
+		
+		long iterations = targetMillis * 1000000L * CALIBRATION_ITERATIONS / Math.max(1, fastest) / 1000 * 1000;
+		
+		return (int)Math.max(minIterations, Math.min(Integer.MAX_VALUE, iterations));
+	}
+	
+	private static SignedTokens tokenSigner(String authMode, String tokenKeys, String activeTokenKey) {
+		switch(authMode) {
+			case "session":
+				return null;
+			case "token":
+				return SignedTokens.fromConfig(tokenKeys, activeTokenKey);
+			default:
+				throw new IllegalArgumentException("Auth mode must be session or token");
+		}
+	}
+	
+	/**
+	 * Hashes the given password with the current parameters and a new random salt.
+	 * The caller still owns (and should clear) the array
+	 */
+	public PasswordHash hashPassword(char[] password) {
+		Span span = Tracer.startSpan("AuthService.hashPassword");
+		
+		try {
+			
+			if(!isLongEnough(password)) throw new IllegalArgumentException("Password must be a minimum of " + MIN_PASSWORD_LENGTH + " characters long");
+			
+			byte[] salt = new byte[HASH_SALT_LENGTH];
+			secureRandom.nextBytes(salt);
+			
+			long start = System.nanoTime();
+			byte[] hash = passwordHasher.hash(hashAlgorithm, password, salt, hashIterations, HASH_KEY_LENGTH);
+			
+			hashTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			
+			return new PasswordHash(hashAlgorithm, hashIterations, salt, hash);
+		
+		} finally {
+			Tracer.endSpan(span);
+		}
+	}
+	
+	/**
+	 * Whether the password hashes to the stored hash, using the parameters the stored hash was made with.
+	 * The caller still owns (and should clear) the array
+	 */
+	public boolean matches(char[] password, PasswordHash stored) {
+		Span span = Tracer.startSpan("AuthService.matches");
+		
+		try {
+			
+			byte[] salt = stored.isLegacy() ? legacySalt(password) : stored.getSalt();
+			long start = System.nanoTime();
+			byte[] hash = passwordHasher.hash(stored.getAlgorithm(), password, salt, stored.getIterations(), stored.getHash().length * 8);
+			
+			verifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			
+			return MessageDigest.isEqual(hash, stored.getHash());
+		
+		} finally {
+			Tracer.endSpan(span);
+		}
+	}
+	
+	/**
+	 * Always false, but only after the same work as checking a password against a current hash - for a login
+	 * whose username doesn't exist, so it takes as long to fail as one whose password is wrong.
+	 * The caller still owns (and should clear) the array
+	 */
+	public boolean matchesNoUser(char[] password) {
+		matches(password, noUserHash);
+		
+		return false;
+	}
+	
+	/**
+	 * Whether the stored hash was made with weaker parameters than new hashes are.
+	 * Hashes with more iterations than the current setting are left alone
+	 */
+	public boolean needsRehash(PasswordHash stored) {
+		return stored.isLegacy() || !stored.getAlgorithm().equals(hashAlgorithm) || stored.getIterations() < hashIterations;
+	}
+	
+	public String getHashAlgorithm() {
+		return hashAlgorithm;
+	}
+	
+	public int getHashIterations() {
+		return hashIterations;
+	}
+	
+	private static Timer hashTimer(MeterRegistry meterRegistry, String operation) {
+		return Timer.builder("jingle.password.hash")
+					.description("Time spent hashing passwords")
+					.tag("operation", operation)
+					.register(meterRegistry);
+	}
+	
+	/**
+	 * The salt legacy hashes were made with - the password's own characters, reversed and repeated
+	 */
+	private static byte[] legacySalt(char[] password) {
 		byte[] salt = new byte[20];
 		
 		for(int i = 0; i < salt.length; i++) {
-			salt[i] = (byte)password.charAt(password.length()-1-(i%password.length()));
-		}		
-		
-		KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, 65536, 128);
-		SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+			salt[i] = (byte)password[password.length-1-(i%password.length)];
+		}
 		
-		return factory.generateSecret(spec).getEncoded();
+		return salt;
+	}
+	
+	/**
+	 * Whether the password meets the minimum length - anything shorter can't be a stored password
+	 */
+	public boolean isLongEnough(char[] password) {
+		return password != null && password.length >= MIN_PASSWORD_LENGTH;
+	}
+	
+	public boolean isLongEnough(String password) {
+		return password != null && password.length() >= MIN_PASSWORD_LENGTH;
+	}
+	
+	/**
+	 * Hashes the given password with the current parameters, then wipes the password from memory
+	 */
+	public PasswordHash hashAndClear(char[] password) {
+		try {
+			return hashPassword(password);
+		} finally {
+			if(password != null) Arrays.fill(password, '\0');
+		}
 	}
 	
 	/**
@@ -50,24 +284,39 @@ public class AuthService {
 	
 	/**
 	 * Creates a new authentication key for a given userid, with an expiry time of
-	 * authTimeout milliseconds
+	 * authTimeout milliseconds (at most maxLifetime)
 	 */
 	public String newAuthKey(long userId, long authTimeout) {
-		String ALPHA_NUMERIC_STRING = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_";
+		Span span = Tracer.startSpan("AuthService.newAuthKey");
+		
+		try {
+			
+			long now = System.currentTimeMillis();
+			authTimeout = Math.min(authTimeout, maxLifetime);
+			
+			if(signedTokens != null) {
+				longestAuthTimeout.accumulateAndGet(authTimeout, Math::max);
+				return signedTokens.issue(userId, now + authTimeout);
+			}
+			
+			String ALPHA_NUMERIC_STRING = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_";
 
-		StringBuilder builder = new StringBuilder();
+			StringBuilder builder = new StringBuilder();
 
-		for(int i = 0; i < 30; i++) {
-			int character = (int)(Math.random()*ALPHA_NUMERIC_STRING.length());
-			builder.append(ALPHA_NUMERIC_STRING.charAt(character));
-		}
-		
-		String authKey = builder.toString();
-		
-		authKeys.put(authKey, userId);
-		authKeyExpires.put(authKey, new Date(new Date().getTime() + authTimeout));
+			for(int i = 0; i < 30; i++) {
+				int character = secureRandom.nextInt(ALPHA_NUMERIC_STRING.length());
+				builder.append(ALPHA_NUMERIC_STRING.charAt(character));
+			}
+			
+			String authKey = builder.toString();
+			
+			sessionStore.put(authKey, new Session(userId, now + authTimeout, now, slidingExpiry ? authTimeout : 0));
+			
+			return authKey;
 		
-		return authKey;
+		} finally {
+			Tracer.endSpan(span);
+		}
 	}
 	
 	/**
@@ -79,17 +328,78 @@ public class AuthService {
 			throw new IllegalArgumentException("User id cannot be null");
 		}
 		
-		Long userIdAuth = authKeys.get(authKey);
-		Date expiresAt = authKeyExpires.get(authKey);
+		return isValidAuthKey(authKey, user.getId());
+	}
+	
+	/**
+	 * Check if the given authentication key is valid for the given userid
+	 */
+	public boolean isValidAuthKey(String authKey, long userId) throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		Span span = Tracer.startSpan("AuthService.isValidAuthKey");
 		
-		if (userIdAuth == null || !userIdAuth.equals(user.getId()) || expiresAt == null) {
-			throw new InvalidAuthKeyException();
+		try {
+			
+			long now = System.currentTimeMillis();
+			Session session = signedTokens != null ? signedTokens.verify(authKey) : sessionStore.get(authKey);
+			
+			if (session == null || session.getUserId() != userId || isRevoked(userId, now)) {
+				throw new InvalidAuthKeyException();
+			}
+			
+			if (session.isExpired(now)) {
+				if(signedTokens == null) sessionStore.remove(authKey);
+				throw new ExpiredAuthKeyException();
+			}
+			
+			if (session.getIdleTimeout() > 0) {
+				extend(authKey, session, now);
+			}
+			
+			return true;
+		
+		} finally {
+			Tracer.endSpan(span);
 		}
+	}
+	
+	/**
+	 * Pushes a sliding session's expiry back to a full idle timeout from now - but only once
+	 * less than half of it is left, so a busy key costs one store write per half timeout rather
+	 * than one per request. Never past issuedAt + maxLifetime
+	 */
+	private void extend(String authKey, Session session, long now) {
+		long remaining = session.getExpiresAt() - now;
+		
+		if(remaining > session.getIdleTimeout() / 2) return;
+		
+		long expiresAt = Math.min(now + session.getIdleTimeout(), session.getIssuedAt() + maxLifetime);
 		
-		if (expiresAt.before(new Date())) {
-			throw new ExpiredAuthKeyException();
+		if(expiresAt > session.getExpiresAt()) {
+			sessionStore.put(authKey, session.extendedTo(expiresAt));
 		}
+	}
+	
+	/**
+	 * Stops every auth key issued to the given user from working - for when the user is deleted.
+	 * Session keys simply go unused (the userid is never reused), but a signed token can't be
+	 * taken back, so in token mode the userid is rejected until its last token would have expired.
+	 * The revocation is only known to this instance
+	 */
+	public void revokeAuthKeys(long userId) {
+		if(signedTokens == null) return;
+		
+		long now = System.currentTimeMillis();
+		
+		// Forget revocations whose tokens have all expired, so the set stays small
+		revokedUsers.values().removeIf(revokedUntil -> revokedUntil <= now);
+		revokedUsers.put(userId, now + longestAuthTimeout.get());
+	}
+	
+	private boolean isRevoked(long userId, long now) {
+		if(revokedUsers.isEmpty()) return false;
+		
+		Long revokedUntil = revokedUsers.get(userId);
 		
-		return true;
+		return revokedUntil != null && revokedUntil > now;
 	}
 }
@@ -0,0 +1,395 @@
+package com.jingle.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jingle.exceptions.InvalidAuthKeyException;
+import com.jingle.exceptions.ServerBusyException;
+import com.jingle.models.PasswordHash;
+import com.jingle.models.User;
+import com.jingle.repositories.UserRepository;
+
+/**
+ * Service class for the bulk signup endpoint, which only admins (holders of jingle.bulk-signup.admin-key) may use.
+ * The body is streamed a chunk at a time - only chunkSize rows (and their plaintext passwords) are held at once:
+ * passwords in a chunk are hashed on a pool of the import's own (never the HashWorkerPool that /login and
+ * /signup use, so an import can't fill its queue), the chunk is inserted with one batched saveAll,
+ * and a result line per row is written back before the next chunk is read.
+ * A row that can't be saved - too long a line included - fails on its own result line, never the whole import.
+ * One import runs at a time - another one arriving meanwhile gets a ServerBusyException
+ *
+ */
+@Service
+public class BulkSignupHelper {
+
+	public static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+	public static final MediaType APPLICATION_NDJSON = MediaType.valueOf("application/x-ndjson");
+
+	private static final String[] FIELDS = { "username", "firstname", "lastname", "email", "password" };
+
+	private UserRepository userRepository;
+
+	private AuthService authService;
+
+	private HashWorkerPool hashWorkerPool;
+
+	private UsernameFilter usernameFilter;
+
+	private ObjectMapper objectMapper;
+
+	private int chunkSize;
+
+	private int maxLineLength;
+
+	// Empty when no admin key is configured - then nobody can use the endpoint
+	private byte[] adminKey;
+
+	private final Semaphore running = new Semaphore(1);
+
+	@Autowired
+	BulkSignupHelper(UserRepository userRepository,
+					 AuthService authService,
+					 UsernameFilter usernameFilter,
+					 ObjectMapper objectMapper,
+					 @Value("${jingle.bulk-signup.chunk-size:500}") int chunkSize,
+					 @Value("${jingle.bulk-signup.max-line-length:1024}") int maxLineLength,
+					 @Value("${jingle.bulk-signup.hash-threads:0}") int hashThreads,
+					 @Value("${jingle.bulk-signup.admin-key:}") String adminKey) {
+		this.userRepository = userRepository;
+		this.authService = authService;
+		this.usernameFilter = usernameFilter;
+		this.objectMapper = objectMapper;
+		this.chunkSize = chunkSize;
+		this.maxLineLength = maxLineLength;
+		this.adminKey = adminKey.getBytes(StandardCharsets.UTF_8);
+
+		// Room for a whole chunk, and only one import at a time - so nothing is ever rejected
+		this.hashWorkerPool = new HashWorkerPool("bulk-hash-", hashThreads, chunkSize);
+	}
+
+	/**
+	 * Throws InvalidAuthKeyException unless the given key is the admin key
+	 */
+	public void checkAdminKey(String key) throws InvalidAuthKeyException {
+		if(adminKey.length == 0 || key == null || !MessageDigest.isEqual(adminKey, key.getBytes(StandardCharsets.UTF_8))) {
+			throw new InvalidAuthKeyException();
+		}
+	}
+
+	/**
+	 * Checks the request body is a format saveUsers can read
+	 */
+	public void checkContentType(String contentType) {
+		MediaType mediaType = contentType == null ? null : MediaType.parseMediaType(contentType);
+
+		if(mediaType == null || !(TEXT_CSV.includes(mediaType) || APPLICATION_NDJSON.includes(mediaType))) {
+			throw new IllegalArgumentException("Bulk signup body must be " + TEXT_CSV + " or " + APPLICATION_NDJSON);
+		}
+	}
+
+	/**
+	 * Saves every user in the input, writing an NDJSON result line per row to the output.
+	 * CSV rows are username,firstname,lastname,email,password (an optional header row is skipped);
+	 * NDJSON rows are objects with those same keys.
+	 * A line longer than maxLineLength is skipped, with an error result for its row
+	 */
+	public void saveUsers(InputStream in, String contentType, ResponseStarter response) throws IOException {
+
+		if(!running.tryAcquire()) throw new ServerBusyException();
+
+		List<Row> chunk = new ArrayList<Row>(chunkSize);
+
+		try {
+
+			boolean csv = TEXT_CSV.includes(MediaType.parseMediaType(contentType));
+			LineReader reader = new LineReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), maxLineLength);
+			OutputStream out = response.start();
+			int rowNumber = 0;
+			String line;
+
+			while((line = reader.readLine()) != null) {
+				if(line.trim().isEmpty() && !reader.tooLong) continue;
+
+				// Skip a CSV header row
+				if(csv && rowNumber == 0 && line.toLowerCase(Locale.ROOT).startsWith("username,")) continue;
+
+				rowNumber++;
+
+				if(reader.tooLong) {
+					Row row = new Row(rowNumber);
+					row.error = "Rows can be at most " + maxLineLength + " characters long";
+					chunk.add(row);
+				} else {
+					chunk.add(parseRow(rowNumber, line, csv));
+				}
+
+				if(chunk.size() == chunkSize) {
+					saveChunk(chunk);
+					writeResults(chunk, out);
+					chunk.clear();
+				}
+			}
+
+			if(!chunk.isEmpty()) {
+				saveChunk(chunk);
+				writeResults(chunk, out);
+			}
+
+		} finally {
+			// Passwords of rows that never reached saveChunk, if the input broke off part way
+			for(Row row : chunk) {
+				if(row.password != null) Arrays.fill(row.password, '\0');
+			}
+
+			running.release();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		hashWorkerPool.shutdown();
+	}
+
+	private Row parseRow(int rowNumber, String line, boolean csv) {
+		Row row = new Row(rowNumber);
+
+		try {
+
+			String[] values = csv ? parseCsv(line) : parseJson(line);
+
+			row.user = new User(values[0], values[1], values[2], values[3], null);
+			row.password = values[4].toCharArray();
+
+		} catch(IllegalArgumentException ex) {
+			row.error = ex.getMessage();
+
+		} catch(IOException ex) {
+			row.error = "Row is not a valid JSON object";
+		}
+
+		return row;
+	}
+
+	/**
+	 * Splits a CSV line into its five fields - fields may be double quoted, with "" for a literal quote
+	 */
+	private String[] parseCsv(String line) {
+		List<String> values = new ArrayList<String>(FIELDS.length);
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+
+			if(quoted) {
+				if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else if(c == '"') {
+					quoted = false;
+				} else {
+					value.append(c);
+				}
+
+			} else if(c == '"') {
+				quoted = true;
+
+			} else if(c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+
+			} else {
+				value.append(c);
+			}
+		}
+
+		values.add(value.toString());
+
+		if(values.size() != FIELDS.length) {
+			throw new IllegalArgumentException("Row must have " + FIELDS.length + " columns: " + String.join(",", FIELDS));
+		}
+
+		return values.toArray(new String[FIELDS.length]);
+	}
+
+	private String[] parseJson(String line) throws IOException {
+		JsonNode node = objectMapper.readTree(line);
+
+		if(node == null || !node.isObject()) throw new IOException();
+
+		String[] values = new String[FIELDS.length];
+
+		for(int i = 0; i < FIELDS.length; i++) {
+			JsonNode field = node.get(FIELDS[i]);
+
+			if(field == null || field.isNull()) {
+				throw new IllegalArgumentException("Required field '" + FIELDS[i] + "' is not present");
+			}
+
+			values[i] = field.asText();
+		}
+
+		return values;
+	}
+
+	/**
+	 * Hashes the chunk's passwords in parallel, then inserts the chunk in one batch.
+	 * If the batch hits a UNIQUE index, each row is retried alone so only the clashing rows fail
+	 */
+	private void saveChunk(List<Row> chunk) {
+		List<CompletableFuture<PasswordHash>> hashes = new ArrayList<CompletableFuture<PasswordHash>>(chunk.size());
+
+		for(Row row : chunk) {
+			char[] password = row.password;
+			hashes.add(row.user == null ? null : hashWorkerPool.supply(() -> authService.hashAndClear(password)));
+		}
+
+		List<User> users = new ArrayList<User>(chunk.size());
+
+		for(int i = 0; i < chunk.size(); i++) {
+			Row row = chunk.get(i);
+
+			if(row.user == null) continue;
+
+			try {
+
+				row.user.setPassword(hashes.get(i).join());
+				usernameFilter.add(row.user.getUsername());
+				users.add(row.user);
+
+			} catch(CompletionException ex) {
+				row.error = ex.getCause().getMessage();
+				row.user = null;
+			}
+		}
+
+		try {
+
+			userRepository.saveAll(users);
+
+		} catch(DataIntegrityViolationException ex) {
+
+			for(Row row : chunk) {
+				if(row.user == null) continue;
+
+				// Ids were handed out to the rolled back batch - let each insert take a fresh one
+				row.user.setId(null);
+
+				try {
+
+					userRepository.save(row.user);
+
+				} catch(DataIntegrityViolationException rowEx) {
+					row.error = UserControllerHelper.conflictMessage(rowEx);
+					row.user = null;
+				}
+			}
+		}
+	}
+
+	private void writeResults(List<Row> chunk, OutputStream out) throws IOException {
+		for(Row row : chunk) {
+			Map<String, Object> result = new LinkedHashMap<String, Object>();
+			result.put("row", row.rowNumber);
+
+			if(row.user != null) {
+				result.put("id", row.user.getId());
+				result.put("username", row.user.getUsername());
+			} else {
+				result.put("error", row.error);
+			}
+
+			out.write(objectMapper.writeValueAsBytes(result));
+			out.write('\n');
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Starts the response - sets its status and headers, and returns the stream to write results to
+	 */
+	@FunctionalInterface
+	public interface ResponseStarter {
+		OutputStream start() throws IOException;
+	}
+
+	/**
+	 * Reads up to the next \n (dropping a \r before it), or returns null at the end of the input.
+	 * Never buffers more than maxLineLength characters - the rest of a longer line is skipped, and tooLong is set
+	 */
+	private static final class LineReader {
+
+		private final Reader reader;
+		private final int maxLineLength;
+		private boolean tooLong;
+
+		LineReader(Reader reader, int maxLineLength) {
+			this.reader = reader;
+			this.maxLineLength = maxLineLength;
+		}
+
+		String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c;
+
+			tooLong = false;
+
+			while((c = reader.read()) != -1 && c != '\n') {
+				if(line.length() >= maxLineLength) {
+					tooLong = true;
+				} else {
+					line.append((char)c);
+				}
+			}
+
+			if(c == -1 && line.length() == 0) return null;
+
+			int end = line.length();
+
+			if(end > 0 && line.charAt(end - 1) == '\r') line.setLength(end - 1);
+
+			return tooLong ? "" : line.toString();
+		}
+	}
+
+	/**
+	 * One input row - either a user waiting to be saved, or the reason it couldn't be
+	 */
+	private static final class Row {
+
+		private final int rowNumber;
+		private User user;
+		private char[] password;
+		private String error;
+
+		Row(int rowNumber) {
+			this.rowNumber = rowNumber;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.jingle.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jingle.exceptions.ServerBusyException;
+import com.jingle.tracing.Tracer;
+
+/**
+ * Fixed-size pool that runs the CPU-heavy password hashing off the request threads.
+ * The queue in front of it is bounded - once it is full new work is rejected straight
+ * away with a ServerBusyException rather than piling up behind a login storm
+ *
+ */
+@Component
+public class HashWorkerPool {
+
+	private final ThreadPoolExecutor executor;
+
+	@Autowired
+	HashWorkerPool(@Value("${jingle.hash.threads:0}") int threads,
+				   @Value("${jingle.hash.queue-capacity:64}") int queueCapacity) {
+		this("password-hash-", threads, queueCapacity);
+	}
+
+	/**
+	 * A pool of its own - for work that mustn't queue in front of interactive hashes (see BulkSignupHelper)
+	 */
+	HashWorkerPool(String threadNamePrefix, int threads, int queueCapacity) {
+
+		// 0 threads means one per available core
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		AtomicInteger threadCount = new AtomicInteger();
+
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+											   new ArrayBlockingQueue<Runnable>(queueCapacity),
+											   runnable -> {
+												   Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+												   thread.setDaemon(true);
+												   return thread;
+											   },
+											   new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Runs the given task on the hashing pool, in the caller's trace (if it is being traced) - as are
+	 * any stages that complete along with the future.
+	 * Throws ServerBusyException immediately if the pool's queue is full
+	 */
+	public <T> CompletableFuture<T> supply(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+
+		try {
+			executor.execute(Tracer.wrap(() -> {
+				try {
+					future.complete(task.call());
+				} catch(Throwable ex) {
+					future.completeExceptionally(ex);
+				}
+			}));
+
+		} catch(RejectedExecutionException ex) {
+			throw new ServerBusyException();
+		}
+
+		return future;
+	}
+
+	public int getPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+
+	public int getQueuedTasks() {
+		return executor.getQueue().size();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
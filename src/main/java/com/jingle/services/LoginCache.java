@@ -0,0 +1,199 @@
+package com.jingle.services;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jingle.models.User;
+import com.jingle.util.Evictor;
+
+/**
+ * Bounded, short-lived record of recent successful logins, so a client that logs in again
+ * with the same credentials within ttlMillis skips the PBKDF2 hash.
+ * Only a digest is kept per user - an HMAC, under a key random to this process, of the username,
+ * the stored password hash and the password. A password that hasn't logged in successfully
+ * is never in the cache, so guessing still costs a full hash per guess; and any change to
+ * the stored hash (an edit, or a rehash) stops the old digest matching, even without invalidate(...).
+ * Digests are zeroed as soon as they are evicted, expire or are replaced
+ *
+ */
+@Component
+public class LoginCache {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final Map<Long, CachedLogin> loginsByUserId = new ConcurrentHashMap<Long, CachedLogin>();
+
+	private final int maxSize;
+	private final long ttlMillis;
+
+	private final ThreadLocal<Mac> mac;
+
+	private final Evictor<Long, CachedLogin> evictor;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	LoginCache(@Value("${jingle.login-cache.max-size:10000}") int maxSize,
+			   @Value("${jingle.login-cache.ttl-ms:300000}") long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.evictor = new Evictor<Long, CachedLogin>(loginsByUserId, maxSize, cached -> cached.expiresAt, (userId, cached) -> cached.clear());
+
+		byte[] secret = new byte[32];
+		new SecureRandom().nextBytes(secret);
+
+		SecretKeySpec keySpec = new SecretKeySpec(secret, ALGORITHM);
+		Arrays.fill(secret, (byte)0);
+
+		this.mac = ThreadLocal.withInitial(() -> {
+			try {
+				Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(keySpec);
+				return mac;
+			} catch(GeneralSecurityException ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+	}
+
+	/**
+	 * Whether the user logged in with this password within the last ttlMillis,
+	 * and their stored password hash hasn't changed since
+	 */
+	public boolean contains(User user, char[] password) {
+		if(maxSize <= 0 || user.getId() == null || user.getPassHash() == null) return false;
+
+		CachedLogin cached = loginsByUserId.get(user.getId());
+
+		if(cached == null) {
+			misses.increment();
+			return false;
+		}
+
+		if(cached.isExpired(System.currentTimeMillis())) {
+			remove(user.getId(), cached);
+			misses.increment();
+			return false;
+		}
+
+		byte[] digest = digest(user.getUsername(), user.getPassHash(), password);
+		boolean matches = MessageDigest.isEqual(digest, cached.digest);
+
+		Arrays.fill(digest, (byte)0);
+
+		if(matches) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Records a successful login - storedHash is the user's password hash as it now stands
+	 */
+	public void put(User user, byte[] storedHash, char[] password) {
+		if(maxSize <= 0 || user.getId() == null) return;
+
+		long now = System.currentTimeMillis();
+		CachedLogin previous = loginsByUserId.put(user.getId(), new CachedLogin(digest(user.getUsername(), storedHash, password), now + ttlMillis));
+
+		if(previous != null) {
+			previous.clear();
+		}
+
+		if(loginsByUserId.size() > maxSize) {
+			evictor.evict(now);
+		}
+	}
+
+	/**
+	 * Forgets the user's last login - for when their password changes or they are deleted
+	 */
+	public void invalidate(long userId) {
+		CachedLogin removed = loginsByUserId.remove(userId);
+
+		if(removed != null) {
+			removed.clear();
+		}
+	}
+
+	/**
+	 * Logins that skipped the hash
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int size() {
+		return loginsByUserId.size();
+	}
+
+	/**
+	 * HMAC of username, 0, storedHash, 0, password - the password's chars are fed in directly,
+	 * so no copy of it is ever made
+	 */
+	private byte[] digest(String username, byte[] storedHash, char[] password) {
+		Mac mac = this.mac.get();
+
+		for(int i = 0; i < username.length(); i++) {
+			update(mac, username.charAt(i));
+		}
+
+		mac.update((byte)0);
+		mac.update(storedHash);
+		mac.update((byte)0);
+
+		for(char c : password) {
+			update(mac, c);
+		}
+
+		return mac.doFinal();
+	}
+
+	private static void update(Mac mac, char c) {
+		mac.update((byte)(c >>> 8));
+		mac.update((byte)c);
+	}
+
+	private void remove(long userId, CachedLogin cached) {
+		if(loginsByUserId.remove(userId, cached)) {
+			cached.clear();
+		}
+	}
+
+	private static final class CachedLogin {
+
+		private final byte[] digest;
+		private final long expiresAt;
+
+		CachedLogin(byte[] digest, long expiresAt) {
+			this.digest = digest;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return expiresAt <= now;
+		}
+
+		void clear() {
+			Arrays.fill(digest, (byte)0);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.jingle.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jingle.exceptions.TooManyRequestsException;
+import com.jingle.models.User;
+
+/**
+ * Rate limits the endpoints that hash a password, so nobody can spend the server's CPU
+ * on PBKDF2. Logins are limited per client IP and per username, signups per client IP.
+ * A rate of 0 turns that limit off
+ *
+ */
+@Component
+public class LoginRateLimiter {
+
+	private final RateLimiter loginsByIp;
+	private final RateLimiter loginsByUsername;
+	private final RateLimiter signupsByIp;
+
+	private final LongAdder rejectedLogins = new LongAdder();
+	private final LongAdder rejectedSignups = new LongAdder();
+	private final LongAdder hashesSaved = new LongAdder();
+
+	LoginRateLimiter(@Value("${jingle.rate-limit.login.per-ip.rate:10}") double loginIpRate,
+					 @Value("${jingle.rate-limit.login.per-ip.burst:50}") int loginIpBurst,
+					 @Value("${jingle.rate-limit.login.per-username.rate:1}") double loginUsernameRate,
+					 @Value("${jingle.rate-limit.login.per-username.burst:10}") int loginUsernameBurst,
+					 @Value("${jingle.rate-limit.signup.per-ip.rate:2}") double signupIpRate,
+					 @Value("${jingle.rate-limit.signup.per-ip.burst:50}") int signupIpBurst,
+					 @Value("${jingle.rate-limit.max-keys:100000}") int maxKeys) {
+
+		this.loginsByIp = loginIpRate > 0 ? new RateLimiter(loginIpRate, loginIpBurst, maxKeys) : null;
+		this.loginsByUsername = loginUsernameRate > 0 ? new RateLimiter(loginUsernameRate, loginUsernameBurst, maxKeys) : null;
+		this.signupsByIp = signupIpRate > 0 ? new RateLimiter(signupIpRate, signupIpBurst, maxKeys) : null;
+	}
+
+	/**
+	 * Throws TooManyRequestsException if the client IP or the username has run out of login attempts.
+	 * Usernames are counted normalized, since logins ignore case - otherwise every spelling would get its own allowance.
+	 * wouldHash is whether the login would otherwise have been hashed on the HashWorkerPool (see getHashesSaved)
+	 */
+	public void checkLogin(String clientIp, String username, boolean wouldHash) {
+		long now = System.nanoTime();
+		long wait = tryAcquire(loginsByIp, clientIp, now);
+
+		if(wait == 0) {
+			wait = tryAcquire(loginsByUsername, User.normalize(username), now);
+		}
+
+		if(wait > 0) {
+			rejectedLogins.increment();
+			if(wouldHash) hashesSaved.increment();
+			throw new TooManyRequestsException(toRetryAfterSeconds(wait));
+		}
+	}
+
+	/**
+	 * Throws TooManyRequestsException if the client IP has run out of signups.
+	 * wouldHash is whether the signup would otherwise have been hashed on the HashWorkerPool (see getHashesSaved)
+	 */
+	public void checkSignup(String clientIp, boolean wouldHash) {
+		long wait = tryAcquire(signupsByIp, clientIp, System.nanoTime());
+
+		if(wait > 0) {
+			rejectedSignups.increment();
+			if(wouldHash) hashesSaved.increment();
+			throw new TooManyRequestsException(toRetryAfterSeconds(wait));
+		}
+	}
+
+	public long getRejectedLogins() {
+		return rejectedLogins.sum();
+	}
+
+	public long getRejectedSignups() {
+		return rejectedSignups.sum();
+	}
+
+	/**
+	 * Rejected logins and signups that would otherwise have been hashed on the HashWorkerPool -
+	 * not ones that would have failed first anyway (too short a password, say), nor bulk signups,
+	 * which hash on a pool of their own
+	 */
+	public long getHashesSaved() {
+		return hashesSaved.sum();
+	}
+
+	private static long tryAcquire(RateLimiter limiter, String key, long now) {
+		return limiter == null || key == null ? 0 : limiter.tryAcquire(key, now);
+	}
+
+	private static long toRetryAfterSeconds(long waitNanos) {
+		return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+	}
+}
@@ -0,0 +1,183 @@
+package com.jingle.services;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * PBKDF2 implementation that produces the same output as the JCE SecretKeyFactory,
+ * but without a provider lookup per hash or any garbage per iteration.
+ * The PBKDF2 loop runs over a JCE Mac (HmacSHA1 for PBKDF2WithHmacSHA1, and so on) that each
+ * thread keeps, along with its scratch buffers, per algorithm - the Mac is reset and the buffers
+ * wiped after every hash, and passwords are taken as char[] so they can be cleared by the caller.
+ * Algorithms that aren't PBKDF2WithHmac-something are passed through to the JCE
+ *
+ */
+public class PasswordHasher {
+
+	private static final String PBKDF2_PREFIX = "PBKDF2WithHmac";
+
+	private static final String SHA1_ALGORITHM = "PBKDF2WithHmacSHA1";
+
+	private static final ThreadLocal<Map<String, HashState>> STATES = ThreadLocal.withInitial(HashMap::new);
+
+	/**
+	 * Throws IllegalArgumentException if the named algorithm isn't available
+	 */
+	public static void checkAlgorithm(String algorithm) {
+		try {
+			if(algorithm.startsWith(PBKDF2_PREFIX)) {
+				Mac.getInstance(macAlgorithm(algorithm));
+			} else {
+				SecretKeyFactory.getInstance(algorithm);
+			}
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalArgumentException("Password hash algorithm " + algorithm + " is not available");
+		}
+	}
+
+	/**
+	 * Derives a keyLength-bit key from the password and salt with the named PBKDF2 algorithm
+	 */
+	public byte[] hash(String algorithm, char[] password, byte[] salt, int iterations, int keyLength) {
+		if(iterations < 1) throw new IllegalArgumentException("Iterations must be at least 1");
+		if(keyLength < 8 || keyLength % 8 != 0) throw new IllegalArgumentException("Key length must be a positive multiple of 8 bits");
+
+		// A Mac can't be keyed with an empty password
+		if(!algorithm.startsWith(PBKDF2_PREFIX) || password.length == 0) {
+			return jceHash(algorithm, password, salt, iterations, keyLength);
+		}
+
+		HashState state = STATES.get().computeIfAbsent(algorithm, HashState::new);
+		byte[] key = new byte[keyLength / 8];
+
+		try {
+			state.initMac(password);
+
+			for(int block = 1, offset = 0; offset < key.length; block++, offset += state.t.length) {
+				state.deriveBlock(salt, block, iterations);
+				System.arraycopy(state.t, 0, key, offset, Math.min(state.t.length, key.length - offset));
+			}
+
+			return key;
+
+		} catch(GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+
+		} finally {
+			state.clear();
+		}
+	}
+
+	/**
+	 * Derives a keyLength-bit PBKDF2WithHmacSHA1 key from the password and salt
+	 */
+	public byte[] hash(char[] password, byte[] salt, int iterations, int keyLength) {
+		return hash(SHA1_ALGORITHM, password, salt, iterations, keyLength);
+	}
+
+	private static byte[] jceHash(String algorithm, char[] password, byte[] salt, int iterations, int keyLength) {
+		PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, keyLength);
+
+		try {
+			return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+		} catch(GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+	private static String macAlgorithm(String algorithm) {
+		return "Hmac" + algorithm.substring(PBKDF2_PREFIX.length());
+	}
+
+	/**
+	 * Per-thread Mac and scratch space. Nothing here is allocated on the hashing path
+	 * except the Mac's key, or a buffer for a password longer than any seen before on this thread
+	 */
+	private static final class HashState {
+
+		private final Mac mac;
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+																	.onMalformedInput(CodingErrorAction.REPLACE)
+																	.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		private ByteBuffer passwordBytes = ByteBuffer.allocate(64);
+		private final byte[] blockIndex = new byte[4];
+		private final byte[] u;
+		private final byte[] t;
+
+		HashState(String algorithm) {
+			try {
+				this.mac = Mac.getInstance(macAlgorithm(algorithm));
+			} catch(NoSuchAlgorithmException ex) {
+				throw new IllegalStateException(ex);
+			}
+
+			this.u = new byte[mac.getMacLength()];
+			this.t = new byte[mac.getMacLength()];
+		}
+
+		/**
+		 * Keys the Mac with the UTF-8 encoded password, as the JCE does
+		 */
+		void initMac(char[] password) throws GeneralSecurityException {
+			int maxBytes = (int)(password.length * encoder.maxBytesPerChar());
+
+			if(passwordBytes.capacity() < maxBytes) {
+				passwordBytes = ByteBuffer.allocate(maxBytes);
+			}
+
+			encoder.reset();
+			encoder.encode(CharBuffer.wrap(password), passwordBytes, true);
+			encoder.flush(passwordBytes);
+
+			mac.init(new SecretKeySpec(passwordBytes.array(), 0, passwordBytes.position(), mac.getAlgorithm()));
+		}
+
+		/**
+		 * Computes T_block = U_1 ^ U_2 ^ ... ^ U_iterations into t
+		 */
+		void deriveBlock(byte[] salt, int block, int iterations) throws GeneralSecurityException {
+			blockIndex[0] = (byte)(block >>> 24);
+			blockIndex[1] = (byte)(block >>> 16);
+			blockIndex[2] = (byte)(block >>> 8);
+			blockIndex[3] = (byte)block;
+
+			mac.update(salt);
+			mac.update(blockIndex);
+			mac.doFinal(u, 0);
+			System.arraycopy(u, 0, t, 0, u.length);
+
+			for(int i = 1; i < iterations; i++) {
+				mac.update(u);
+				mac.doFinal(u, 0);
+
+				for(int j = 0; j < t.length; j++) {
+					t[j] ^= u[j];
+				}
+			}
+		}
+
+		void clear() {
+			mac.reset();
+			Arrays.fill(passwordBytes.array(), (byte)0);
+			passwordBytes.clear();
+			Arrays.fill(u, (byte)0);
+			Arrays.fill(t, (byte)0);
+		}
+	}
+}
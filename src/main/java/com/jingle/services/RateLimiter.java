@@ -0,0 +1,127 @@
+package com.jingle.services;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket per key, using the generic cell rate algorithm - each bucket is a
+ * single AtomicLong holding the time at which it will next be full, updated with a CAS.
+ * Keys are spread over stripes of bounded size. When a stripe is full, buckets that have
+ * refilled (and so are no different from a new bucket) are dropped; if it is still full, the
+ * bucket nearest to refilling is - so a new key always gets a bucket of its own, and no flood
+ * of new keys can throttle anyone else's
+ *
+ */
+public class RateLimiter {
+
+	private static final int STRIPES = 64;
+
+	// A bucket that was last full long ago - far enough in the past to be before any "now",
+	// yet not so far that subtracting a timestamp from it overflows
+	private static final long FULL = Long.MIN_VALUE / 2;
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	private final int maxKeysPerStripe;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	/**
+	 * Allows ratePerSecond requests per key on average, and bursts of up to burst requests at once
+	 */
+	public RateLimiter(double ratePerSecond, int burst, int maxKeys) {
+		if(ratePerSecond <= 0) throw new IllegalArgumentException("Rate limit must be greater than 0");
+		if(burst < 1) throw new IllegalArgumentException("Rate limit burst must be at least 1");
+		if(maxKeys < STRIPES) throw new IllegalArgumentException("Rate limiter must allow at least " + STRIPES + " keys");
+
+		this.intervalNanos = (long)(1000000000L / ratePerSecond);
+		this.burstNanos = intervalNanos * burst;
+		this.maxKeysPerStripe = maxKeys / STRIPES;
+
+		for(int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Takes a token from the key's bucket. Returns 0 if there was one, otherwise
+	 * how many nanoseconds until there will be (and nothing is taken)
+	 */
+	public long tryAcquire(String key, long now) {
+		AtomicLong bucket = stripes[(key.hashCode() & 0x7fffffff) % STRIPES].bucket(key, now);
+
+		while(true) {
+			long full = bucket.get();
+			long next = Math.max(full, now) + intervalNanos;
+			long wait = next - burstNanos - now;
+
+			if(wait > 0) {
+				return wait;
+			}
+
+			if(bucket.compareAndSet(full, next)) {
+				return 0;
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+
+		for(Stripe stripe : stripes) {
+			size += stripe.buckets.size();
+		}
+
+		return size;
+	}
+
+	private final class Stripe {
+
+		private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+		private final AtomicBoolean evicting = new AtomicBoolean();
+
+		AtomicLong bucket(String key, long now) {
+			AtomicLong bucket = buckets.get(key);
+
+			if(bucket != null) {
+				return bucket;
+			}
+
+			if(buckets.size() >= maxKeysPerStripe) {
+				makeRoom(now);
+			}
+
+			return buckets.computeIfAbsent(key, k -> new AtomicLong(FULL));
+		}
+
+		/**
+		 * Drops every bucket that has refilled, or failing that the ones that will refill soonest.
+		 * Only one thread makes room in a stripe at a time - the others add their key without waiting,
+		 * so a stripe can briefly hold a few more buckets than maxKeysPerStripe
+		 */
+		void makeRoom(long now) {
+			if(!evicting.compareAndSet(false, true)) {
+				return;
+			}
+
+			try {
+				buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+
+				// Also takes back any buckets added past the limit while another pass was running
+				int excess = buckets.size() - maxKeysPerStripe + 1;
+
+				if(excess > 0) {
+					buckets.entrySet().stream()
+						   .sorted(Comparator.comparingLong(entry -> entry.getValue().get() - now))
+						   .limit(excess)
+						   .forEach(entry -> buckets.remove(entry.getKey(), entry.getValue()));
+				}
+			} finally {
+				evicting.set(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.jingle.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.jingle.models.User;
+import com.jingle.models.UserProfile;
+import com.jingle.util.Evictor;
+
+/**
+ * Bounded, read-through cache of UserProfiles for the read endpoints, keyed by both id and (normalized) username.
+ * Entries expire after ttlMillis, and once the cache grows past maxSize the oldest entries
+ * are evicted (see Evictor). Writers must call invalidate(...) after changing or deleting a user
+ *
+ */
+@Component
+public class UserCache {
+
+	private final Map<Long, CachedUser> usersById = new ConcurrentHashMap<Long, CachedUser>();
+	private final Map<String, Long> idsByUsername = new ConcurrentHashMap<String, Long>();
+
+	private final int maxSize;
+	private final long ttlMillis;
+
+	// Bumped on every invalidation, so a load that raced with a write isn't cached
+	private final AtomicLong invalidations = new AtomicLong();
+	private final Evictor<Long, CachedUser> evictor;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	UserCache(@Value("${jingle.user-cache.max-size:10000}") int maxSize,
+			  @Value("${jingle.user-cache.ttl-ms:60000}") long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.evictor = new Evictor<Long, CachedUser>(usersById, maxSize, cached -> cached.expiresAt, (userId, cached) -> {
+			idsByUsername.remove(cached.user.getUsernameNormalized(), userId);
+			evictions.increment();
+		});
+	}
+
+	/**
+	 * Returns the cached user with the given id, or loads (and caches) it using the loader
+	 */
+	public UserProfile getById(long userId, Supplier<UserProfile> loader) {
+		UserProfile user = cachedById(userId, System.currentTimeMillis());
+
+		if(user != null) {
+			hits.increment();
+			return user;
+		}
+
+		return load(loader);
+	}
+
+	/**
+	 * Returns the cached user with the given username (in any case), or loads (and caches) it using the loader
+	 */
+	public UserProfile getByUsername(String username, Supplier<UserProfile> loader) {
+		UserProfile user = cachedByUsername(User.normalize(username), System.currentTimeMillis());
+
+		if(user != null) {
+			hits.increment();
+			return user;
+		}
+
+		return load(loader);
+	}
+
+	/**
+	 * Returns the users with the given ids, keyed by id. Every id that isn't cached is loaded
+	 * (and cached) with a single call to the loader. Ids the loader doesn't return are left out
+	 */
+	public Map<Long, UserProfile> getAllById(Collection<Long> userIds, Function<Collection<Long>, Iterable<UserProfile>> loader) {
+		return getAll(userIds, this::cachedById, UserProfile::getId, loader);
+	}
+
+	/**
+	 * Returns the users with the given usernames, keyed by normalized username (see User.normalize). Every username
+	 * that isn't cached is loaded (and cached) with a single call to the loader, which is given them normalized.
+	 * Usernames the loader doesn't return are left out
+	 */
+	public Map<String, UserProfile> getAllByUsername(Collection<String> usernames, Function<Collection<String>, Iterable<UserProfile>> loader) {
+		List<String> normalized = new ArrayList<String>(usernames.size());
+
+		for(String username : usernames) {
+			normalized.add(User.normalize(username));
+		}
+
+		return getAll(normalized, this::cachedByUsername, UserProfile::getUsernameNormalized, loader);
+	}
+
+	/**
+	 * Drops the user with the given id (under whatever username it was cached)
+	 */
+	public void invalidate(long userId) {
+		invalidations.incrementAndGet();
+		remove(userId);
+	}
+
+	public void clear() {
+		invalidations.incrementAndGet();
+		usersById.clear();
+		idsByUsername.clear();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		return usersById.size();
+	}
+
+	private UserProfile cachedById(long userId, long now) {
+		CachedUser cached = usersById.get(userId);
+
+		return cached != null && !cached.isExpired(now) ? cached.user : null;
+	}
+
+	private UserProfile cachedByUsername(String usernameNormalized, long now) {
+		Long userId = idsByUsername.get(usernameNormalized);
+		UserProfile user = userId == null ? null : cachedById(userId, now);
+
+		// Check the username too, in case the entry was replaced after a rename
+		return user != null && usernameNormalized.equals(user.getUsernameNormalized()) ? user : null;
+	}
+
+	private <K> Map<K, UserProfile> getAll(Collection<K> keys, CachedLookup<K> cached, Function<UserProfile, K> keyOf, Function<Collection<K>, Iterable<UserProfile>> loader) {
+		long now = System.currentTimeMillis();
+
+		Map<K, UserProfile> found = new HashMap<K, UserProfile>();
+		Set<K> missing = new LinkedHashSet<K>();
+
+		for(K key : keys) {
+			UserProfile user = cached.get(key, now);
+
+			if(user != null) {
+				hits.increment();
+				found.put(key, user);
+			} else {
+				missing.add(key);
+			}
+		}
+
+		if(missing.isEmpty()) {
+			return found;
+		}
+
+		misses.add(missing.size());
+
+		long invalidationsBeforeLoad = invalidations.get();
+
+		for(UserProfile user : loader.apply(missing)) {
+			found.put(keyOf.apply(user), user);
+
+			if(maxSize > 0 && user.getId() != null) {
+				put(user, invalidationsBeforeLoad);
+			}
+		}
+
+		return found;
+	}
+
+	private UserProfile load(Supplier<UserProfile> loader) {
+		misses.increment();
+
+		long invalidationsBeforeLoad = invalidations.get();
+		UserProfile user = loader.get();
+
+		if(maxSize > 0 && user != null && user.getId() != null) {
+			put(user, invalidationsBeforeLoad);
+		}
+
+		return user;
+	}
+
+	private void put(UserProfile user, long invalidationsBeforeLoad) {
+		long now = System.currentTimeMillis();
+		CachedUser previous = usersById.put(user.getId(), new CachedUser(user, now + ttlMillis));
+
+		if(previous != null && !previous.user.getUsernameNormalized().equals(user.getUsernameNormalized())) {
+			idsByUsername.remove(previous.user.getUsernameNormalized(), user.getId());
+		}
+
+		idsByUsername.put(user.getUsernameNormalized(), user.getId());
+
+		// A write happened while this user was being loaded - it may be stale, so don't keep it
+		if(invalidations.get() != invalidationsBeforeLoad) {
+			remove(user.getId());
+			return;
+		}
+
+		if(usersById.size() > maxSize) {
+			evictor.evict(now);
+		}
+	}
+
+	private void remove(long userId) {
+		CachedUser removed = usersById.remove(userId);
+
+		if(removed != null) {
+			idsByUsername.remove(removed.user.getUsernameNormalized(), userId);
+		}
+	}
+
+	@FunctionalInterface
+	private interface CachedLookup<K> {
+		UserProfile get(K key, long now);
+	}
+
+	private static final class CachedUser {
+
+		private final UserProfile user;
+		private final long expiresAt;
+
+		CachedUser(UserProfile user, long expiresAt) {
+			this.user = user;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return expiresAt <= now;
+		}
+	}
+}
@@ -1,27 +1,57 @@
 package com.jingle.services;
 
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 import javax.security.auth.login.FailedLoginException;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.MissingRequestHeaderException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import com.jingle.exceptions.ExpiredAuthKeyException;
 import com.jingle.exceptions.InvalidAuthKeyException;
+import com.jingle.exceptions.LoginFailedException;
+import com.jingle.exceptions.ServerBusyException;
+import com.jingle.exceptions.TooManyRequestsException;
+import com.jingle.exceptions.UserNotFoundException;
+import com.jingle.models.LoginResult;
+import com.jingle.models.PasswordHash;
 import com.jingle.models.User;
+import com.jingle.models.UserBatch;
+import com.jingle.models.UserProfile;
 import com.jingle.repositories.UserRepository;
+import com.jingle.tracing.Span;
+import com.jingle.tracing.Tracer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * Service class for APIController.
@@ -31,176 +61,476 @@ import com.jingle.repositories.UserRepository;
 @Service
 public class UserControllerHelper {
 	
+	// Bodies for the everyday failures - built once and shared by every response
+	private static final ResponseEntity<Map<String, Object>> FAILED_LOGIN = errorResponse("Incorrect username or password", HttpStatus.UNAUTHORIZED);
+	private static final ResponseEntity<Map<String, Object>> INVALID_AUTH_KEY = errorResponse(new InvalidAuthKeyException().getMessage(), HttpStatus.UNAUTHORIZED);
+	private static final ResponseEntity<Map<String, Object>> EXPIRED_AUTH_KEY = errorResponse(new ExpiredAuthKeyException().getMessage(), HttpStatus.UNAUTHORIZED);
+	private static final Map<String, Object> TOO_MANY_REQUESTS_BODY = Collections.singletonMap("error", new TooManyRequestsException(1).getMessage());
+	private static final ResponseEntity<Map<String, Object>> SERVER_BUSY = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+																					  .header(HttpHeaders.RETRY_AFTER, "1")
+																					  .body(Collections.singletonMap("error", new ServerBusyException().getMessage()));
+	
 	@Autowired
 	private UserRepository userRepository;
 	
 	private AuthService authService;
 	
+	private HashWorkerPool hashWorkerPool;
+	
+	// Database writes that follow a hash run here, so the hashing threads never wait on a connection or a round trip
+	private Executor databaseExecutor;
+	
+	private UserCache userCache;
+	
+	private UsernameFilter usernameFilter;
+	
+	private LoginCache loginCache;
+	
+	private int maxBatchSize;
+	
+	private MeterRegistry meterRegistry;
+	
+	// jingle.errors counter per exception type, so counting an error is a map lookup and an add
+	private final Map<Class<?>, Counter> errorCounters = new ConcurrentHashMap<Class<?>, Counter>();
+	
 	@Autowired
-	UserControllerHelper(UserRepository userRepository) {
+	UserControllerHelper(UserRepository userRepository,
+						 AuthService authService,
+						 HashWorkerPool hashWorkerPool,
+						 @Qualifier("applicationTaskExecutor") Executor applicationTaskExecutor,
+						 UserCache userCache,
+						 UsernameFilter usernameFilter,
+						 LoginCache loginCache,
+						 MeterRegistry meterRegistry,
+						 @Value("${jingle.user-batch.max-size:500}") int maxBatchSize) {
 		this.userRepository = userRepository;
-		this.authService = new AuthService();
+		this.authService = authService;
+		this.hashWorkerPool = hashWorkerPool;
+		this.databaseExecutor = task -> applicationTaskExecutor.execute(Tracer.wrap(task));
+		this.userCache = userCache;
+		this.usernameFilter = usernameFilter;
+		this.loginCache = loginCache;
+		this.meterRegistry = meterRegistry;
+		this.maxBatchSize = maxBatchSize;
 	}
 	
 	/**
-	 * Save user to database
+	 * Save user to database - the password is hashed on the HashWorkerPool, then cleared,
+	 * and the user is inserted from the database executor
 	 */
-	public ResponseEntity<User> saveUser(User user) throws NoSuchAlgorithmException, InvalidKeySpecException {
+	public CompletableFuture<ResponseEntity<UserProfile>> saveUser(User user, char[] password) {
+		Span span = Tracer.startSpan("UserControllerHelper.saveUser");
 		
-		byte[] passwordHash = authService.getPasswordHash(new String(user.getPassHash()));
-		user.setPasswordHash(passwordHash);
-		
-		User savedUser = userRepository.save(user);
-		
-		return new ResponseEntity<User>(savedUser, HttpStatus.CREATED);
+		try {
+			
+			return hashWorkerPool.supply(() -> authService.hashAndClear(password)).thenApplyAsync(passwordHash -> {
+				user.setPassword(passwordHash);
+				
+				// The name has to be in the filter before it can be found in the database
+				usernameFilter.add(user.getUsername());
+				
+				User savedUser = userRepository.save(user);
+				
+				return new ResponseEntity<UserProfile>(UserProfile.of(savedUser), HttpStatus.CREATED);
+			}, databaseExecutor);
+		
+		} finally {
+			Tracer.endSpan(span);
+		}
 	}
 
 	/**
-	 * Login with username and password - returns Authentication Key
+	 * Login with username and password - returns the user's id and Authentication Key
 	 */
-	public ResponseEntity<Map<String, Object>> loginUser(String username, String password) throws NoSuchAlgorithmException, InvalidKeySpecException, FailedLoginException {
-
-		Map<String, Object> output = new HashMap<String, Object>();
-
-		String authKey;
+	public CompletableFuture<ResponseEntity<LoginResult>> loginUser(String username, char[] password) throws FailedLoginException {
+		Span span = Tracer.startSpan("UserControllerHelper.loginUser");
 		
 		try {
 			
-			authKey = getAuthKey(username, password);
+			return authenticate(username, password).thenApply(loginResult -> new ResponseEntity<LoginResult>(loginResult, HttpStatus.OK));
 		
-		} catch(IllegalArgumentException ex) {
-			// If login password is too short, don't reveal real reason - just return FailedLogin
-			if(ex.getMessage().equals("Password must be a minimum of 8 characters long")) {
-				throw new FailedLoginException();
-			} else {
-				throw ex;
+		} finally {
+			Tracer.endSpan(span);
+		}
+	}
+	
+	/**
+	 * Whether a signup or login with this password would get as far as a hash - too short a password fails first.
+	 * A login the LoginCache would have answered skips the hash too, but telling those apart would take a query
+	 */
+	public boolean wouldHash(String password) {
+		return authService.isLongEnough(password);
+	}
+	
+	/**
+	 * Edit existing user - returns updated user 
+	 * Only the given fields are written, in a single UPDATE statement
+	 */
+	public CompletableFuture<ResponseEntity<UserProfile>> editUser(Long userId, String authKey, String username, String firstName, String lastName, String emailAddress, char[] password) throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		Span span = Tracer.startSpan("UserControllerHelper.editUser");
+		
+		try {
+			
+			checkAuthKey(authKey, userId);
+			
+			if(username != null) User.checkUsername(username);
+			
+			if(emailAddress != null) User.checkEmailAddress(emailAddress);
+			
+			if(password == null) {
+				return CompletableFuture.completedFuture(updateUser(userId, username, firstName, lastName, emailAddress, null));
 			}
+			
+			return hashWorkerPool.supply(() -> authService.hashAndClear(password))
+								 .thenApplyAsync(passwordHash -> {
+									 loginCache.invalidate(userId);
+									 return updateUser(userId, username, firstName, lastName, emailAddress, passwordHash);
+								 }, databaseExecutor);
+		
+		} finally {
+			Tracer.endSpan(span);
 		}
-		Long userId = userRepository.findByUsername(username).get().getId();
+	}
+	
+	/**
+	 * Deletes a user from the database - returns whether successful or not
+	 */
+	public ResponseEntity<Map<String, Object>> deleteUser(Long userId, String authKey) throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		Span span = Tracer.startSpan("UserControllerHelper.deleteUser");
 		
-		output.put("id", userId);
-		output.put("authKey", authKey);
+		try {
+			
+			Map<String, Object> output = new HashMap<String, Object>();
+			
+			checkAuthKey(authKey, userId);
+			
+			if(userRepository.deleteUserById(userId) == 0) {
+				throw UserNotFoundException.forUserId(userId);
+			}
+			
+			userCache.invalidate(userId);
+			loginCache.invalidate(userId);
+			authService.revokeAuthKeys(userId);
+			
+			output.put("id", userId);
+			output.put("success", true);
+			
+			return new ResponseEntity<Map<String, Object>>(output, HttpStatus.OK);
 		
-		return new ResponseEntity<Map<String, Object>>(output, HttpStatus.OK);
+		} finally {
+			Tracer.endSpan(span);
+		}
 	}
 	
 	/**
-	 * Edit existing user - returns updated user 
+	 * Returns a user's profile, from the UserCache if possible, otherwise from the database
 	 */
-	public ResponseEntity<User> editUser(Long userId, String authKey, String username, String firstName, String lastName, String emailAddress, String password) throws NoSuchAlgorithmException, InvalidKeySpecException, ExpiredAuthKeyException, InvalidAuthKeyException {
+	public ResponseEntity<UserProfile> getUser(Long userId, String username) {
+		Span span = Tracer.startSpan("UserControllerHelper.getUser");
 		
-		User user = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("User with userid (" + userId + ") doesn't exist"));
+		try {
+			
+			UserProfile user;
+			
+
+			if(userId != null) {
+				user = userCache.getById(userId, () -> userRepository.findProfileById(userId).orElseThrow(() -> UserNotFoundException.forUserId(userId)));
+			
+			} else if(username != null) {
+				user = userCache.getByUsername(username, () -> findProfileByUsername(username).orElseThrow(() -> UserNotFoundException.forUsername(username)));
+			
+			} else {
+				throw new IllegalArgumentException("Either a userid or username must be provided");
+			}
+			
+			return new ResponseEntity<UserProfile>(user, HttpStatus.OK);
 		
-		authService.isValidAuthKey(authKey, user);
+		} finally {
+			Tracer.endSpan(span);
+		}
+	}
+	
+	/**
+	 * Returns many users' profiles at once - whatever isn't in the UserCache is loaded with at most
+	 * one query for the userids and one for the usernames.
+	 * Userids and usernames that don't exist are listed in the result rather than failing the batch
+	 */
+	public ResponseEntity<UserBatch> getUsers(List<Long> userIds, List<String> usernames) {
+		Span span = Tracer.startSpan("UserControllerHelper.getUsers");
 		
-		if(username != null) user.setUsername(username);
+		try {
+			
+			if(userIds == null) userIds = Collections.emptyList();
+			
+			if(usernames == null) usernames = Collections.emptyList();
+			
+			if(userIds.isEmpty() && usernames.isEmpty()) {
+				throw new IllegalArgumentException("Either userids or usernames must be provided");
+			}
+			
+			if(userIds.size() + usernames.size() > maxBatchSize) {
+				throw new IllegalArgumentException("No more than " + maxBatchSize + " userids and usernames can be requested at once");
+			}
+			
+			Map<Long, UserProfile> usersById = userIds.isEmpty() ? Collections.emptyMap() : userCache.getAllById(userIds, userRepository::findProfilesByIdIn);
+			Map<String, UserProfile> usersByUsername = usernames.isEmpty() ? Collections.emptyMap() : userCache.getAllByUsername(usernames, this::findProfilesByUsername);
+			
+			List<UserProfile> users = new ArrayList<UserProfile>();
+			Set<Long> foundIds = new HashSet<Long>();
+			Set<Long> missingIds = new LinkedHashSet<Long>();
+			Set<String> missingUsernames = new LinkedHashSet<String>();
+			
+			for(Long userId : userIds) {
+				UserProfile user = usersById.get(userId);
+				
+				if(user == null) {
+					missingIds.add(userId);
+				} else if(foundIds.add(user.getId())) {
+					users.add(user);
+				}
+			}
+			
+			for(String username : usernames) {
+				UserProfile user = usersByUsername.get(User.normalize(username));
+				
+				if(user == null) {
+					missingUsernames.add(username);
+				} else if(foundIds.add(user.getId())) {
+					users.add(user);
+				}
+			}
+			
+			return new ResponseEntity<UserBatch>(new UserBatch(users, new ArrayList<Long>(missingIds), new ArrayList<String>(missingUsernames)), HttpStatus.OK);
 		
-		if(firstName != null) user.setFirstName(firstName);
+		} finally {
+			Tracer.endSpan(span);
+		}
+	}
+	
+	/**
+	 * Returns the user's id and a new authorization key if the username matches the password.
+	 * The user is only looked up once, and nothing is hashed if the login can't possibly succeed,
+	 * or if the same password logged in recently (see LoginCache).
+	 * A password hash made with weaker parameters than the current ones is upgraded while the password is at hand -
+	 * the new hash is made on the HashWorkerPool, and stored from the database executor
+	 */
+	private CompletableFuture<LoginResult> authenticate(String username, char[] password) throws FailedLoginException {
 		
-		if(lastName != null) user.setLastName(lastName);
+		// Don't reveal whether it was the username or the (too short) password that was wrong
+		if(!authService.isLongEnough(password)) {
+			if(password != null) Arrays.fill(password, '\0');
+			throw new LoginFailedException();
+		}
 		
-		if(emailAddress != null) user.setEmailAddress(emailAddress);
+		User user = findByUsername(username).orElse(null);
+		
+		// The UsernameFilter saves the query, but an unknown username still costs a hash - failing
+		// any sooner would let response times tell which usernames exist
+		if(user == null) {
+			return hashWorkerPool.supply(() -> {
+				try {
+					
+					authService.matchesNoUser(password);
+					throw new LoginFailedException();
+				
+				} finally {
+					Arrays.fill(password, '\0');
+				}
+			});
+		}
 		
-		if(password != null) user.setPasswordHash(authService.getPasswordHash(password));
+		if(loginCache.contains(user, password)) {
+			Arrays.fill(password, '\0');
+			return CompletableFuture.completedFuture(new LoginResult(user.getId(), authService.newAuthKey(user.getId())));
+		}
 		
-		User updatedUser = userRepository.save(user);
+		PasswordHash stored = user.getPassword();
+		
+		return hashWorkerPool.supply(() -> {
+			try {
+				
+				if(stored == null || !authService.matches(password, stored)) {
+					throw new LoginFailedException();
+				}
+				
+				PasswordHash upgraded = authService.needsRehash(stored) ? authService.hashPassword(password) : null;
+				
+				// Remembered against the hash the user will have once the upgrade is stored - if storing it fails,
+				// the stored hash won't match the digest, so the next login simply hashes again
+				loginCache.put(user, upgraded == null ? stored.getHash() : upgraded.getHash(), password);
+				
+				return upgraded;
+			
+			} finally {
+				Arrays.fill(password, '\0');
+			}
 		
-		return new ResponseEntity<User>(updatedUser, HttpStatus.OK);
+		}).thenApplyAsync(upgraded -> {
+			if(upgraded != null) upgradePassword(user.getId(), stored, upgraded);
+			
+			return new LoginResult(user.getId(), authService.newAuthKey(user.getId()));
+		
+		}, upgradeExecutor(stored));
 	}
 	
 	/**
-	 * Deletes a user from the database - returns whether successful or not
+	 * Where a login finishes once the password has been checked - the database executor if the hash will need
+	 * upgrading, otherwise straight on the hashing thread, since there is nothing to write
 	 */
-	public ResponseEntity<Map<String, Object>> deleteUser(Long userId, String authKey) throws ExpiredAuthKeyException, InvalidAuthKeyException {
-		Map<String, Object> output = new HashMap<String, Object>();
-		
-		User userToDelete = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("User with userid (" + userId + ") doesn't exist"));
+	private Executor upgradeExecutor(PasswordHash stored) {
+		return stored != null && authService.needsRehash(stored) ? databaseExecutor : Runnable::run;
+	}
+	
+	/**
+	 * Stores the rehashed password, unless it has been changed since it was read.
+	 * The login has already succeeded, so if this fails the upgrade is simply tried again next time.
+	 * Returns whether it was stored
+	 */
+	private boolean upgradePassword(long userId, PasswordHash stored, PasswordHash upgraded) {
+		try {
+			
+			if(userRepository.replacePassword(userId, stored.getHash(), upgraded) > 0) {
+				userCache.invalidate(userId);
+				return true;
+			}
 		
-		authService.isValidAuthKey(authKey, userToDelete);
-		userRepository.deleteById(userId);
+		} catch(DataAccessException ex) {
+			// Left for the next login
+		}
 		
-		output.put("id", userId);
-		output.put("success", true);
+		return false;
+	}
+	
+	/**
+	 * Looks the username up (ignoring case), unless the UsernameFilter knows it doesn't exist
+	 */
+	private Optional<User> findByUsername(String username) {
+		return usernameFilter.mightContain(username) ? userRepository.findByUsernameNormalized(User.normalize(username)) : Optional.empty();
+	}
+	
+	/**
+	 * As findByUsername, but reads only the profile
+	 */
+	private Optional<UserProfile> findProfileByUsername(String username) {
+		return usernameFilter.mightContain(username) ? userRepository.findProfileByUsernameNormalized(User.normalize(username)) : Optional.empty();
+	}
+	
+	/**
+	 * Looks up the profiles of only the normalized usernames that the UsernameFilter can't rule out
+	 */
+	private List<UserProfile> findProfilesByUsername(Collection<String> usernamesNormalized) {
+		List<String> candidates = usernamesNormalized.stream().filter(usernameFilter::mightContain).collect(Collectors.toList());
 		
-		return new ResponseEntity<Map<String, Object>>(output, HttpStatus.OK);
+		return candidates.isEmpty() ? Collections.emptyList() : userRepository.findProfilesByUsernameNormalizedIn(candidates);
 	}
 	
 	/**
-	 * Returns a User from the database
+	 * Writes the given fields, then reads back the updated user's profile
 	 */
-	public ResponseEntity<User> getUser(Long userId, String username) {
+	private ResponseEntity<UserProfile> updateUser(Long userId, String username, String firstName, String lastName, String emailAddress, PasswordHash passwordHash) {
 		
-		User user;
+		if(username != null) usernameFilter.add(username);
 		
-
-		if(userId != null) {
-			user = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("User with userid (" + userId + ") doesn't exist"));
+		if(userRepository.updateUser(userId, username, firstName, lastName, emailAddress, passwordHash) == 0) {
+			throw UserNotFoundException.forUserId(userId);
+		}
 		
-		} else if(username != null) {
-			user = userRepository.findByUsername(username).orElseThrow(() -> new IllegalArgumentException("User with username (" + username + ") doesn't exist"));
+		userCache.invalidate(userId);
 		
-		} else {
-			throw new IllegalArgumentException("Either a userid or username must be provided");
-		}
+		UserProfile updatedUser = userRepository.findProfileById(userId).orElseThrow(() -> UserNotFoundException.forUserId(userId));
 		
-		return new ResponseEntity<User>(user, HttpStatus.OK);
+		return new ResponseEntity<UserProfile>(updatedUser, HttpStatus.OK);
 	}
 	
 	/**
-	 * Returns an authorization key if the username matches the password
+	 * Checks the auth key belongs to the given user, without loading the user.
+	 * Only if the key is rejected is the database asked whether the user exists,
+	 * so an unknown userid is still reported as such
 	 */
-	private String getAuthKey(String username, String password) throws NoSuchAlgorithmException, InvalidKeySpecException, FailedLoginException {
-		
-		User user = userRepository.findByUsername(username).orElseThrow(() -> new FailedLoginException());
-		
-		if(Arrays.equals(user.getPassHash(), authService.getPasswordHash(password))) {
-			return authService.newAuthKey(user.getId());
+	private void checkAuthKey(String authKey, Long userId) throws ExpiredAuthKeyException, InvalidAuthKeyException {
+		try {
+			
+			authService.isValidAuthKey(authKey, userId);
 		
-		} else {
-			throw new FailedLoginException();
+		} catch(ExpiredAuthKeyException | InvalidAuthKeyException ex) {
+			if(!userRepository.existsById(userId)) {
+				throw UserNotFoundException.forUserId(userId);
+			}
+			
+			throw ex;
 		}
 	}
 	
+	/**
+	 * Turns an exception into an error response. Expected failures get one of the pre-built
+	 * (immutable) responses below, so rejecting a request allocates next to nothing
+	 */
 	public ResponseEntity<Map<String, Object>> exceptionHandler(HttpServletRequest req, Exception ex) {
-		Map<String, Object> output = new HashMap<String, Object>();
-		HttpStatus errorCode;
 		
-		output.put("error", ex.getMessage());
+		errorCounters.computeIfAbsent(ex.getClass(), this::errorCounter).increment();
 		
-		// Check if UNIQUE index triggered
-		if(ex.getClass().equals(DataIntegrityViolationException.class)) {
-			if(ex.getMessage().indexOf("USER(USERNAME)") > -1) {
-				output.put("error", "Username already taken");
-			} else if(ex.getMessage().indexOf("USER(EMAIL_ADDRESS)") > -1) {
-				output.put("error", "Email address already taken");
-			} else {
-				output.put("error", ex.getMessage());
-			}
-			
-			errorCode = HttpStatus.CONFLICT;
+		if(ex instanceof FailedLoginException) {
+			return FAILED_LOGIN;
 		
-		} else if(ex.getClass().equals(IllegalArgumentException.class) ||
-				  ex.getClass().equals(MissingServletRequestParameterException.class) ||
-				  ex.getClass().equals(MissingRequestHeaderException.class)) {
-			errorCode = HttpStatus.BAD_REQUEST;
+		} else if(ex instanceof InvalidAuthKeyException) {
+			return INVALID_AUTH_KEY;
 		
-		} else if(ex.getClass().equals(MethodArgumentTypeMismatchException.class)) {
-			output.put("error", "Userid must be a numeric value");
-			errorCode = HttpStatus.BAD_REQUEST;
-			
-		} else if(ex.getClass().equals(FailedLoginException.class)) {
-			output.put("error", "Incorrect username or password");
-			errorCode = HttpStatus.UNAUTHORIZED;
+		} else if(ex instanceof ExpiredAuthKeyException) {
+			return EXPIRED_AUTH_KEY;
 		
-		} else if(ex.getClass().equals(ExpiredAuthKeyException.class) ||
-				ex.getClass().equals(InvalidAuthKeyException.class)) {
-			errorCode = HttpStatus.UNAUTHORIZED;
+		// The hash queue is full, or no database connection came free within the pool's connection-timeout
+		} else if(ex instanceof ServerBusyException ||
+				  ex instanceof CannotCreateTransactionException ||
+				  ex instanceof DataAccessResourceFailureException) {
+			return SERVER_BUSY;
+		
+		} else if(ex instanceof TooManyRequestsException) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+								 .header(HttpHeaders.RETRY_AFTER, Long.toString(((TooManyRequestsException)ex).getRetryAfterSeconds()))
+								 .body(TOO_MANY_REQUESTS_BODY);
+		
+		// Check if UNIQUE index triggered
+		} else if(ex instanceof DataIntegrityViolationException) {
+			return errorResponse(conflictMessage((DataIntegrityViolationException)ex), HttpStatus.CONFLICT);
+		
+		} else if(ex instanceof MethodArgumentTypeMismatchException) {
+			String param = ((MethodArgumentTypeMismatchException)ex).getName();
+			return errorResponse(Character.toUpperCase(param.charAt(0)) + param.substring(1) + " must be a numeric value", HttpStatus.BAD_REQUEST);
+		
+		} else if(ex instanceof IllegalArgumentException ||
+				  ex instanceof MissingServletRequestParameterException ||
+				  ex instanceof MissingRequestHeaderException) {
+			return errorResponse(ex.getMessage(), HttpStatus.BAD_REQUEST);
 		
 		} else {
-			output.put("error", ex.getClass());
-			errorCode = HttpStatus.INTERNAL_SERVER_ERROR;
+			return errorResponse(ex.getClass(), HttpStatus.INTERNAL_SERVER_ERROR);
 		}
+	}
+	
+	private Counter errorCounter(Class<?> exceptionType) {
+		return Counter.builder("jingle.errors")
+					  .description("Requests that failed, by exception")
+					  .tag("exception", exceptionType.getSimpleName())
+					  .register(meterRegistry);
+	}
+	
+	private static ResponseEntity<Map<String, Object>> errorResponse(Object error, HttpStatus errorCode) {
+		return new ResponseEntity<Map<String, Object>>(Collections.singletonMap("error", error), errorCode);
+	}
+	
+	/**
+	 * Works out which UNIQUE constraint a failed insert or update tripped over - by name, which
+	 * every database puts in its message (H2 upper cases it)
+	 */
+	static String conflictMessage(DataIntegrityViolationException ex) {
+		String message = ex.getMessage().toLowerCase(Locale.ROOT);
 		
-		return new ResponseEntity<Map<String, Object>>(output, errorCode);
+		if(message.indexOf(User.USERNAME_CONSTRAINT) > -1) {
+			return "Username already taken";
+		} else if(message.indexOf(User.EMAIL_ADDRESS_CONSTRAINT) > -1) {
+			return "Email address already taken";
+		} else {
+			return ex.getMessage();
+		}
 	}
 }
@@ -0,0 +1,99 @@
+package com.jingle.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jingle.models.UserPage;
+import com.jingle.models.UserProfile;
+import com.jingle.repositories.UserRepository;
+
+/**
+ * Service class for the user listing endpoints.
+ * Pages are found by id cursor rather than OFFSET, and the export streams
+ * straight from a database cursor to the response
+ *
+ */
+@Service
+public class UserListHelper {
+	
+	private UserRepository userRepository;
+	
+	private ObjectWriter userWriter;
+	
+	private int maxLimit;
+	
+	private int fetchSize;
+	
+	@Autowired
+	UserListHelper(UserRepository userRepository,
+				   ObjectMapper objectMapper,
+				   @Value("${jingle.user-list.max-limit:1000}") int maxLimit,
+				   @Value("${jingle.user-list.fetch-size:500}") int fetchSize) {
+		this.userRepository = userRepository;
+		// Flushing after every user would turn the export into one network write per row
+		this.userWriter = objectMapper.writerFor(UserProfile.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.maxLimit = maxLimit;
+		this.fetchSize = fetchSize;
+	}
+	
+	/**
+	 * Returns up to limit users with an id greater than afterId, plus the cursor for the next page
+	 */
+	public ResponseEntity<UserPage> listUsers(long afterId, int limit) {
+		
+		if(limit < 1 || limit > maxLimit) {
+			throw new IllegalArgumentException("Limit must be between 1 and " + maxLimit);
+		}
+		
+		// Ask for one extra row, so a full last page doesn't point at an empty one
+		List<UserProfile> users = userRepository.findProfilesByIdGreaterThan(afterId, PageRequest.of(0, limit + 1));
+		Long nextAfter = null;
+		
+		if(users.size() > limit) {
+			users = users.subList(0, limit);
+			nextAfter = users.get(limit - 1).getId();
+		}
+		
+		return new ResponseEntity<UserPage>(new UserPage(users, nextAfter), HttpStatus.OK);
+	}
+	
+	/**
+	 * Writes every user with an id greater than afterId to the output, one JSON object per line
+	 */
+	public void exportUsers(long afterId, OutputStream out) throws IOException {
+		
+		try(JsonGenerator generator = userWriter.getFactory().createGenerator(out)) {
+			
+			// Lines are ended by hand - no separator before each value
+			generator.setRootValueSeparator(null);
+			
+			try {
+				
+				userRepository.forEachProfile(afterId, fetchSize, user -> {
+					try {
+						userWriter.writeValue(generator, user);
+						generator.writeRaw('\n');
+					} catch(IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				});
+			
+			} catch(UncheckedIOException ex) {
+				throw ex.getCause();
+			}
+		}
+	}
+}
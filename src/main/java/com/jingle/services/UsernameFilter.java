@@ -0,0 +1,187 @@
+package com.jingle.services;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.jingle.models.User;
+import com.jingle.repositories.UserRepository;
+
+/**
+ * Bloom filter of every username that exists, so lookups of names that don't can be
+ * turned away without a database query.
+ * The filter only sees the usernames in the database at startup and the ones this process writes since,
+ * so a "no" is only right while this is the one instance writing to the database. When other instances
+ * might be - token auth mode (see AuthService), or a database that isn't this process's own H2 - the
+ * filter turns itself off and every check answers "maybe", as a user signed up elsewhere would
+ * otherwise be unable to log in here until the next restart.
+ * A "maybe" still has to be checked against the database. Names must be
+ * added before they are written - bits can't be removed, so deleted and renamed-away names simply
+ * stay as (harmless) false positives until the next restart.
+ * Names are normalized (see User.normalize) before they are hashed, so the filter ignores case like the lookups do.
+ * Until the existing usernames have been loaded at startup, every check answers "maybe"
+ *
+ */
+@Component
+public class UsernameFilter {
+
+	private final UserRepository userRepository;
+
+	private final boolean enabled;
+	private final long expectedUsers;
+
+	private final AtomicLongArray bits;
+	private final long bitMask;
+	private final int hashCount;
+
+	// Random per process, so nobody can work out offline which names collide
+	private final long seed = new SecureRandom().nextLong();
+
+	private volatile boolean loaded;
+
+	private final LongAdder insertions = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+
+	@Autowired
+	UsernameFilter(UserRepository userRepository,
+				   @Value("${jingle.username-filter.enabled:true}") boolean enabled,
+				   @Value("${jingle.username-filter.expected-users:1000000}") long expectedUsers,
+				   @Value("${jingle.username-filter.false-positive-rate:0.01}") double falsePositiveRate,
+				   @Value("${jingle.auth.mode:session}") String authMode,
+				   @Value("${spring.datasource.url:}") String datasourceUrl) {
+		this(userRepository, enabled && !isShared(authMode, datasourceUrl), expectedUsers, falsePositiveRate);
+	}
+
+	UsernameFilter(UserRepository userRepository, boolean enabled, long expectedUsers, double falsePositiveRate) {
+
+		if(expectedUsers < 1) throw new IllegalArgumentException("Username filter expected users must be at least 1");
+		if(falsePositiveRate <= 0 || falsePositiveRate >= 1) throw new IllegalArgumentException("Username filter false positive rate must be between 0 and 1");
+
+		this.userRepository = userRepository;
+		this.enabled = enabled;
+		this.expectedUsers = expectedUsers;
+
+		// Optimal size is -n.ln(p) / ln(2)^2 bits - rounded up to a power of two so a position is just a mask
+		long optimalBits = (long)Math.ceil(-expectedUsers * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		long size = enabled ? Math.max(64, Long.highestOneBit(optimalBits - 1) << 1) : 64;
+
+		this.bits = new AtomicLongArray((int)(size >>> 6));
+		this.bitMask = size - 1;
+		this.hashCount = Math.max(1, (int)Math.round((double)optimalBits / expectedUsers * Math.log(2)));
+	}
+
+	/**
+	 * Whether other instances may be writing users to the same database - token mode exists for instances
+	 * behind a load balancer, and any database but an in-memory or file H2 one can be shared
+	 */
+	static boolean isShared(String authMode, String datasourceUrl) {
+		boolean localDatabase = datasourceUrl.isEmpty() || datasourceUrl.startsWith("jdbc:h2:mem:") || datasourceUrl.startsWith("jdbc:h2:file:");
+
+		return "token".equals(authMode) || !localDatabase;
+	}
+
+	/**
+	 * Loads every existing username. Names added while this runs are kept too
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		if(!enabled) return;
+
+		userRepository.forEachProfile(0, 1000, profile -> add(profile.getUsernameNormalized()));
+		loaded = true;
+	}
+
+	/**
+	 * Records that the given username exists (or is about to)
+	 */
+	public void add(String username) {
+		if(!enabled || username == null) return;
+
+		long hash = hash(User.normalize(username));
+		long step = (hash >>> 32 | hash << 32) ^ seed | 1;
+
+		for(int i = 0; i < hashCount; i++, hash += step) {
+			int word = (int)((hash & bitMask) >>> 6);
+			long bit = 1L << hash;
+
+			long current = bits.get(word);
+
+			while((current & bit) == 0 && !bits.compareAndSet(word, current, current | bit)) {
+				current = bits.get(word);
+			}
+		}
+
+		insertions.increment();
+	}
+
+	/**
+	 * False if the username definitely doesn't exist, true if it might.
+	 * Always probes every position (no early exit), so the time taken doesn't depend on the answer
+	 */
+	public boolean mightContain(String username) {
+		if(!enabled || !loaded) return true;
+
+		if(username == null) return false;
+
+		long hash = hash(User.normalize(username));
+		long step = (hash >>> 32 | hash << 32) ^ seed | 1;
+		long missing = 0;
+
+		for(int i = 0; i < hashCount; i++, hash += step) {
+			missing |= ~bits.get((int)((hash & bitMask) >>> 6)) >>> hash & 1;
+		}
+
+		if(missing != 0) {
+			rejections.increment();
+		}
+
+		return missing == 0;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Number of names added - once this passes expectedUsers the false positive rate starts to climb
+	 */
+	public long getInsertions() {
+		return insertions.sum();
+	}
+
+	public long getExpectedUsers() {
+		return expectedUsers;
+	}
+
+	/**
+	 * Number of lookups turned away without a database query
+	 */
+	public long getRejections() {
+		return rejections.sum();
+	}
+
+	/**
+	 * Seeded 64-bit hash of the username's chars (FNV-1a, then the MurmurHash3 finalizer)
+	 */
+	private long hash(String username) {
+		long hash = 0xcbf29ce484222325L ^ seed;
+
+		for(int i = 0; i < username.length(); i++) {
+			hash = (hash ^ username.charAt(i)) * 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+}
@@ -0,0 +1,39 @@
+package com.jingle.sessions;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of an auth key, in hex - what the persistent session stores keep instead of the key itself,
+ * so a copy of the auth_session table or the session log can't be used to log in.
+ * Auth keys are long and random, so a plain digest is enough - there is nothing to guess
+ *
+ */
+final class AuthKeyHash {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	});
+
+	private AuthKeyHash() {
+	}
+
+	static String of(String authKey) {
+		byte[] digest = SHA256.get().digest(authKey.getBytes(StandardCharsets.UTF_8));
+		char[] hex = new char[digest.length * 2];
+
+		for(int i = 0; i < digest.length; i++) {
+			hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+		}
+
+		return new String(hex);
+	}
+}
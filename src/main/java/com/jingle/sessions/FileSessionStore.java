@@ -0,0 +1,296 @@
+package com.jingle.sessions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Session store that appends every put and remove to a memory-mapped log file, so sessions
+ * survive a restart. Reads are served from an InMemorySessionStore.
+ * Appends are fixed-size records written straight into the mapping - no system call per login -
+ * and a background thread forces dirty pages to disk every flushInterval. When the log fills up
+ * it is compacted: the live sessions are written to a new file, which replaces the old one.
+ * On startup the log is replayed, and then compacted so expired sessions don't carry over.
+ * Only the SHA-256 of each auth key is kept, in the log and in memory - see AuthKeyHash.
+ * A log from before keys were hashed is dropped on startup, which logs its sessions out
+ *
+ */
+public class FileSessionStore implements SessionStore, Closeable {
+
+	// Records are a power of two, so they never straddle a page
+	private static final int RECORD_SIZE = 128;
+	private static final int MAX_KEY_LENGTH = 94;
+
+	private static final byte EMPTY = 0;
+	private static final byte PUT = 'P';
+	private static final byte REMOVE = 'R';
+
+	private static final byte[] MAGIC = "JINGLE-SESSIONS-2".getBytes(StandardCharsets.US_ASCII);
+
+	// Logs that held auth keys in plaintext
+	private static final byte[] OLD_MAGIC = "JINGLE-SESSIONS-1".getBytes(StandardCharsets.US_ASCII);
+
+	private final InMemorySessionStore memory;
+	private final Path path;
+	private final long minCapacity;
+
+	// Appenders share the read lock; compaction takes the write lock to swap the file
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private FileChannel channel;
+	private MappedByteBuffer log;
+	private final AtomicLong position = new AtomicLong();
+	private final AtomicBoolean dirty = new AtomicBoolean();
+
+	private final ScheduledExecutorService flusher;
+
+	public FileSessionStore(InMemorySessionStore memory, Path path, long capacityBytes, long flushIntervalMillis) {
+		if(capacityBytes < RECORD_SIZE * 2) throw new IllegalArgumentException("Session log must be at least " + RECORD_SIZE * 2 + " bytes");
+		if(capacityBytes > Integer.MAX_VALUE / 2) throw new IllegalArgumentException("Session log can be at most " + Integer.MAX_VALUE / 2 + " bytes");
+
+		this.memory = memory;
+		this.path = path;
+		this.minCapacity = capacityBytes / RECORD_SIZE * RECORD_SIZE;
+
+		try {
+
+			if(path.getParent() != null) Files.createDirectories(path.getParent());
+
+			replay();
+			compact(minCapacity);
+
+		} catch(IOException ex) {
+			throw new UncheckedIOException("Couldn't open session log " + path, ex);
+		}
+
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "session-store-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Session get(String authKey) {
+		return memory.get(AuthKeyHash.of(authKey));
+	}
+
+	@Override
+	public void put(String authKey, Session session) {
+		String keyHash = AuthKeyHash.of(authKey);
+
+		memory.put(keyHash, session);
+		append(PUT, keyHash.getBytes(StandardCharsets.US_ASCII), session);
+	}
+
+	@Override
+	public void remove(String authKey) {
+		String keyHash = AuthKeyHash.of(authKey);
+
+		memory.remove(keyHash);
+		append(REMOVE, keyHash.getBytes(StandardCharsets.US_ASCII), null);
+	}
+
+	@Override
+	public int size() {
+		return memory.size();
+	}
+
+	/**
+	 * Forces any appended records to disk. Runs on the flush thread, and on close
+	 */
+	public void flush() {
+		if(!dirty.getAndSet(false)) return;
+
+		lock.readLock().lock();
+
+		try {
+			log.force();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flusher.shutdown();
+
+		lock.writeLock().lock();
+
+		try {
+			log.force();
+			channel.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reserves the next record with a single atomic add, so appenders never wait on each other.
+	 * The record type is written last, so a half-written record is never replayed
+	 */
+	private void append(byte type, byte[] key, Session session) {
+		while(true) {
+			lock.readLock().lock();
+
+			try {
+				long offset = position.getAndAdd(RECORD_SIZE);
+
+				if(offset + RECORD_SIZE <= log.capacity()) {
+					writeRecord(log, (int)offset, type, key, session);
+
+					dirty.set(true);
+					return;
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			// Full - compact (unless another thread just has) and try again
+			compactIfFull();
+		}
+	}
+
+	private void compactIfFull() {
+		lock.writeLock().lock();
+
+		try {
+			if(position.get() + RECORD_SIZE > log.capacity()) {
+				compact(minCapacity);
+			}
+		} catch(IOException ex) {
+			throw new UncheckedIOException("Couldn't compact session log " + path, ex);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replays the existing log (if there is one) into memory
+	 */
+	private void replay() throws IOException {
+		if(!Files.exists(path)) return;
+
+		try(FileChannel existing = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(existing.size() < RECORD_SIZE) return;
+
+			MappedByteBuffer records = existing.map(FileChannel.MapMode.READ_ONLY, 0, existing.size() / RECORD_SIZE * RECORD_SIZE);
+
+			// Its keys can't be hashed back - compaction replaces it with an empty log
+			if(hasMagic(records, OLD_MAGIC)) return;
+
+			if(!hasMagic(records, MAGIC)) throw new IOException("Not a session log");
+
+			long now = System.currentTimeMillis();
+
+			for(int record = RECORD_SIZE; record + RECORD_SIZE <= records.capacity(); record += RECORD_SIZE) {
+				byte type = records.get(record);
+
+				int keyLength = records.get(record + 1);
+
+				// The end of the log, or a record that was never finished
+				if(type == EMPTY || keyLength < 0 || keyLength > MAX_KEY_LENGTH) break;
+
+				byte[] key = new byte[keyLength];
+
+				for(int i = 0; i < key.length; i++) {
+					key[i] = records.get(record + 2 + i);
+				}
+
+				String keyHash = new String(key, StandardCharsets.US_ASCII);
+
+				if(type == PUT) {
+					Session session = new Session(records.getLong(record + 96), records.getLong(record + 104),
+												  records.getLong(record + 112), records.getLong(record + 120));
+
+					if(!session.isExpired(now)) memory.put(keyHash, session);
+
+				} else {
+					memory.remove(keyHash);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the header and every live session to a new log, then swaps it in for the old one.
+	 * The new log is made big enough to hold the live sessions twice over
+	 */
+	private void compact(long capacity) throws IOException {
+		long now = System.currentTimeMillis();
+		long needed = (memory.size() * 2L + 2) * RECORD_SIZE;
+		long newCapacity = Math.max(capacity, needed);
+
+		Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+		FileChannel newChannel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+												  StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer newLog = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+
+		for(int i = 0; i < MAGIC.length; i++) {
+			newLog.put(i, MAGIC[i]);
+		}
+
+		AtomicLong newPosition = new AtomicLong(RECORD_SIZE);
+
+		memory.forEachLive(now, (keyHash, session) -> {
+			// Sessions put while compacting may not fit - they are appended again once this finishes
+			if(newPosition.get() + RECORD_SIZE > newCapacity) return;
+
+			writeRecord(newLog, (int)newPosition.getAndAdd(RECORD_SIZE), PUT, keyHash.getBytes(StandardCharsets.US_ASCII), session);
+		});
+
+		newLog.force();
+		Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		if(channel != null) channel.close();
+
+		channel = newChannel;
+		log = newLog;
+		position.set(newPosition.get());
+	}
+
+	private static boolean hasMagic(MappedByteBuffer records, byte[] magic) {
+		for(int i = 0; i < magic.length; i++) {
+			if(records.get(i) != magic[i]) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes one record - [type][key length][key...][userId @96][expiresAt @104][issuedAt @112][idleTimeout @120].
+	 * The type goes last, since a record only counts once its type is set
+	 */
+	private static void writeRecord(MappedByteBuffer buffer, int record, byte type, byte[] key, Session session) {
+		buffer.put(record + 1, (byte)key.length);
+
+		for(int i = 0; i < key.length; i++) {
+			buffer.put(record + 2 + i, key[i]);
+		}
+
+		if(session != null) {
+			buffer.putLong(record + 96, session.getUserId());
+			buffer.putLong(record + 104, session.getExpiresAt());
+			buffer.putLong(record + 112, session.getIssuedAt());
+			buffer.putLong(record + 120, session.getIdleTimeout());
+		}
+
+		buffer.put(record, type);
+	}
+}
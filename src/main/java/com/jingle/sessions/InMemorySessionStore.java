@@ -0,0 +1,89 @@
+package com.jingle.sessions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import com.jingle.util.Evictor;
+
+/**
+ * Thread-safe store of auth key -> Session.
+ * Reads never block. Expired sessions are swept out on the write path (every
+ * sweepInterval puts, or as soon as the store grows past maxSize), and only one
+ * thread ever sweeps at a time - other writers carry on without waiting.
+ *
+ */
+public class InMemorySessionStore implements SessionStore {
+
+	// Default cap of 100,000 live sessions, swept every 1,024 logins
+	public static final int DEFAULT_MAX_SIZE = 100000;
+	public static final int DEFAULT_SWEEP_INTERVAL = 1024;
+
+	private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+	private final int maxSize;
+	private final int sweepInterval;
+
+	private final AtomicInteger putsSinceSweep = new AtomicInteger();
+	private final Evictor<String, Session> evictor;
+
+	public InMemorySessionStore() {
+		this(DEFAULT_MAX_SIZE, DEFAULT_SWEEP_INTERVAL);
+	}
+
+	public InMemorySessionStore(int maxSize, int sweepInterval) {
+		if(maxSize < 1) throw new IllegalArgumentException("Session store max size must be at least 1");
+		if(sweepInterval < 1) throw new IllegalArgumentException("Session sweep interval must be at least 1");
+
+		this.maxSize = maxSize;
+		this.evictor = new Evictor<String, Session>(sessions, maxSize, Session::getExpiresAt, (authKey, session) -> {});
+		this.sweepInterval = sweepInterval;
+	}
+
+	@Override
+	public Session get(String authKey) {
+		return authKey == null ? null : sessions.get(authKey);
+	}
+
+	/**
+	 * Stores a session against the given auth key, sweeping the store if it is due
+	 */
+	@Override
+	public void put(String authKey, Session session) {
+		sessions.put(authKey, session);
+
+		if(putsSinceSweep.incrementAndGet() >= sweepInterval || sessions.size() > maxSize) {
+			sweep(System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public void remove(String authKey) {
+		sessions.remove(authKey);
+	}
+
+	@Override
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Passes every session that hasn't expired by the given time to the action
+	 */
+	public void forEachLive(long now, BiConsumer<String, Session> action) {
+		sessions.forEach((authKey, session) -> {
+			if(!session.isExpired(now)) action.accept(authKey, session);
+		});
+	}
+
+	/**
+	 * Removes every session that has expired by the given time, then (if the store
+	 * is still over capacity) the sessions closest to expiring - see Evictor.
+	 * Returns straight away if another thread is already sweeping
+	 */
+	public void sweep(long now) {
+		putsSinceSweep.set(0);
+		evictor.evict(now);
+	}
+}
@@ -0,0 +1,183 @@
+package com.jingle.sessions;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Session store that keeps a copy of every session in the database, so sessions survive a restart.
+ * Reads are served from an InMemorySessionStore. Writes go to memory straight away and are queued;
+ * a background thread writes the queue to the auth_session table in JDBC batches every flushInterval.
+ * A session created just before a crash may therefore be lost, which only means logging in again.
+ * On startup, the sessions that haven't expired are loaded back into memory.
+ * Only the SHA-256 of each auth key is kept, in the table and in memory - see AuthKeyHash.
+ * The auth_session table is created by the Flyway migrations, which must have run first
+ *
+ */
+public class JdbcSessionStore implements SessionStore, Closeable {
+
+	// How often rows for expired sessions are deleted from the table
+	private static final long PURGE_INTERVAL = 60000;
+
+	private final InMemorySessionStore memory;
+	private final JdbcTemplate jdbcTemplate;
+	private final int batchSize;
+
+	private final Queue<PendingWrite> pending = new ConcurrentLinkedQueue<PendingWrite>();
+	private final ScheduledExecutorService flusher;
+
+	private long lastPurge;
+
+	private final LongAdder failedFlushes = new LongAdder();
+
+	public JdbcSessionStore(InMemorySessionStore memory, DataSource dataSource, long flushIntervalMillis, int batchSize) {
+		if(batchSize < 1) throw new IllegalArgumentException("Session write batch size must be at least 1");
+
+		this.memory = memory;
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.batchSize = batchSize;
+
+		load();
+
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "session-store-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Session get(String authKey) {
+		return memory.get(AuthKeyHash.of(authKey));
+	}
+
+	@Override
+	public void put(String authKey, Session session) {
+		String keyHash = AuthKeyHash.of(authKey);
+
+		memory.put(keyHash, session);
+		pending.add(new PendingWrite(keyHash, session));
+	}
+
+	@Override
+	public void remove(String authKey) {
+		String keyHash = AuthKeyHash.of(authKey);
+
+		memory.remove(keyHash);
+		pending.add(new PendingWrite(keyHash, null));
+	}
+
+	@Override
+	public int size() {
+		return memory.size();
+	}
+
+	/**
+	 * Number of flushes the database rejected - the writes in them are dropped
+	 */
+	public long getFailedFlushes() {
+		return failedFlushes.sum();
+	}
+
+	/**
+	 * Writes everything queued so far to the database. Runs on the flush thread, and on close
+	 */
+	public synchronized void flush() {
+		try {
+			// Only the latest write to each key matters
+			Map<String, Session> writes = new LinkedHashMap<String, Session>();
+			PendingWrite write;
+
+			while((write = pending.poll()) != null) {
+				writes.put(write.keyHash, write.session);
+
+				if(writes.size() >= batchSize) {
+					write(writes);
+				}
+			}
+
+			write(writes);
+
+			long now = System.currentTimeMillis();
+
+			if(now - lastPurge >= PURGE_INTERVAL) {
+				jdbcTemplate.update("delete from auth_session where expires_at <= ?", now);
+				lastPurge = now;
+			}
+
+		} catch(DataAccessException ex) {
+			// Memory still has the sessions - only their copies are lost. Don't let the flush thread die
+			failedFlushes.increment();
+		}
+	}
+
+	@Override
+	public void close() {
+		flusher.shutdown();
+		flush();
+	}
+
+	/**
+	 * Deletes every key written, then inserts the ones that were put rather than removed - two
+	 * batches however the writes are mixed, and no upsert syntax that differs between databases.
+	 * A key is put more than once when its sliding expiry is extended
+	 */
+	private void write(Map<String, Session> writes) {
+		if(writes.isEmpty()) return;
+
+		List<Object[]> deletes = new ArrayList<Object[]>(writes.size());
+		List<Object[]> inserts = new ArrayList<Object[]>(writes.size());
+
+		for(Map.Entry<String, Session> write : writes.entrySet()) {
+			Session session = write.getValue();
+
+			deletes.add(new Object[] { write.getKey() });
+
+			if(session != null) {
+				inserts.add(new Object[] { write.getKey(), session.getUserId(), session.getExpiresAt(), session.getIssuedAt(), session.getIdleTimeout() });
+			}
+		}
+
+		writes.clear();
+
+		jdbcTemplate.batchUpdate("delete from auth_session where auth_key = ?", deletes);
+
+		if(!inserts.isEmpty()) {
+			jdbcTemplate.batchUpdate("insert into auth_session (auth_key, user_id, expires_at, issued_at, idle_timeout) values (?, ?, ?, ?, ?)", inserts);
+		}
+	}
+
+	private void load() {
+		jdbcTemplate.setFetchSize(batchSize);
+		jdbcTemplate.query("select auth_key, user_id, expires_at, issued_at, idle_timeout from auth_session where expires_at > ?",
+						   (RowCallbackHandler)row -> { memory.put(row.getString(1), new Session(row.getLong(2), row.getLong(3), row.getLong(4), row.getLong(5))); },
+						   System.currentTimeMillis());
+	}
+
+	private static final class PendingWrite {
+
+		private final String keyHash;
+		private final Session session;
+
+		PendingWrite(String keyHash, Session session) {
+			this.keyHash = keyHash;
+			this.session = session;
+		}
+	}
+}
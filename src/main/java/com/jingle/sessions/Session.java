@@ -0,0 +1,59 @@
+package com.jingle.sessions;
+
+/**
+ * Models a single authenticated session - the user the auth key belongs to,
+ * the time (in epoch millis) at which it stops being valid, and for sessions that
+ * can be extended when used, when it was issued and how long an idle session lasts
+ *
+ */
+public final class Session {
+
+	private final long userId;
+	private final long expiresAt;
+	private final long issuedAt;
+	private final long idleTimeout;
+
+	/**
+	 * A session with a fixed expiry, which is never extended
+	 */
+	public Session(long userId, long expiresAt) {
+		this(userId, expiresAt, 0, 0);
+	}
+
+	public Session(long userId, long expiresAt, long issuedAt, long idleTimeout) {
+		this.userId = userId;
+		this.expiresAt = expiresAt;
+		this.issuedAt = issuedAt;
+		this.idleTimeout = idleTimeout;
+	}
+
+	public long getUserId() {
+		return this.userId;
+	}
+
+	public long getExpiresAt() {
+		return this.expiresAt;
+	}
+
+	public long getIssuedAt() {
+		return this.issuedAt;
+	}
+
+	/**
+	 * How long the session lasts from its last refresh, or 0 if it is never extended
+	 */
+	public long getIdleTimeout() {
+		return this.idleTimeout;
+	}
+
+	public boolean isExpired(long now) {
+		return this.expiresAt <= now;
+	}
+
+	/**
+	 * The same session, expiring at the given time instead
+	 */
+	public Session extendedTo(long expiresAt) {
+		return new Session(this.userId, expiresAt, this.issuedAt, this.idleTimeout);
+	}
+}
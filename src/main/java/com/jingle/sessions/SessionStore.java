@@ -0,0 +1,20 @@
+package com.jingle.sessions;
+
+/**
+ * Where AuthService keeps auth key -> Session. Implementations must be thread-safe,
+ * and may drop sessions once they have expired (or to stay within their capacity)
+ *
+ */
+public interface SessionStore {
+	
+	/**
+	 * Returns the session for the given auth key, or null if there isn't one
+	 */
+	public Session get(String authKey);
+	
+	public void put(String authKey, Session session);
+	
+	public void remove(String authKey);
+	
+	public int size();
+}
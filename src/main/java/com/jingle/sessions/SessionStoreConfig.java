@@ -0,0 +1,47 @@
+package com.jingle.sessions;
+
+import java.nio.file.Paths;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+/**
+ * Picks the SessionStore named by jingle.session.store - memory (the default), jdbc or file
+ *
+ */
+@Configuration
+public class SessionStoreConfig {
+	
+	/**
+	 * Depends on the Flyway migrations, which create auth_session - otherwise anything that pulls the store in
+	 * early (e.g. a MeterBinder) would have it read the table before it exists
+	 */
+	@Bean
+	@DependsOn("flywayInitializer")
+	public SessionStore sessionStore(@Value("${jingle.session.store:memory}") String store,
+									 @Value("${jingle.session.max-size:100000}") int maxSessions,
+									 @Value("${jingle.session.sweep-interval:1024}") int sweepInterval,
+									 @Value("${jingle.session.flush-interval-ms:100}") long flushIntervalMillis,
+									 @Value("${jingle.session.jdbc.batch-size:500}") int jdbcBatchSize,
+									 @Value("${jingle.session.file.path:${user.home}/.jingle/sessions.log}") String filePath,
+									 @Value("${jingle.session.file.max-size-mb:64}") long fileMaxSizeMb,
+									 DataSource dataSource) {
+		
+		InMemorySessionStore memory = new InMemorySessionStore(maxSessions, sweepInterval);
+		
+		switch(store) {
+			case "memory":
+				return memory;
+			case "jdbc":
+				return new JdbcSessionStore(memory, dataSource, flushIntervalMillis, jdbcBatchSize);
+			case "file":
+				return new FileSessionStore(memory, Paths.get(filePath), fileMaxSizeMb * 1024 * 1024, flushIntervalMillis);
+			default:
+				throw new IllegalArgumentException("Session store must be memory, jdbc or file");
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.jingle.sessions;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies stateless auth keys of the form kid.userId.expiresAt.signature,
+ * where the signature is an HMAC-SHA256 of everything before it under the key named kid.
+ * Any instance holding the same keys can verify a token with no shared state.
+ * New tokens are always signed with the active key; tokens signed with any other
+ * configured key keep verifying until they expire, so keys can be rotated by adding
+ * the new key, making it active, and removing the old one a token lifetime later
+ *
+ */
+public class SignedTokens {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final int MIN_SECRET_LENGTH = 32;
+
+	private final Map<String, SigningKey> keys;
+	private final SigningKey activeKey;
+
+	/**
+	 * Takes kid -> secret pairs, and the kid of the key new tokens are signed with
+	 */
+	public SignedTokens(Map<String, byte[]> secrets, String activeKid) {
+		if(secrets.isEmpty()) throw new IllegalArgumentException("At least one token signing key is required");
+
+		this.keys = new LinkedHashMap<String, SigningKey>();
+
+		for(Map.Entry<String, byte[]> secret : secrets.entrySet()) {
+			keys.put(secret.getKey(), new SigningKey(secret.getKey(), secret.getValue()));
+		}
+
+		this.activeKey = keys.get(activeKid);
+
+		if(activeKey == null) throw new IllegalArgumentException("Active token signing key (" + activeKid + ") is not configured");
+	}
+
+	/**
+	 * Parses keys written as kid:base64Secret,kid:base64Secret. If none are given, a random key is
+	 * generated - fine for a single instance, but tokens won't survive a restart or verify elsewhere
+	 */
+	public static SignedTokens fromConfig(String keyList, String activeKid) {
+		Map<String, byte[]> secrets = new LinkedHashMap<String, byte[]>();
+
+		for(String entry : keyList.split(",")) {
+			if(entry.trim().isEmpty()) continue;
+
+			int colon = entry.indexOf(':');
+
+			if(colon < 1) throw new IllegalArgumentException("Token signing keys must be given as kid:base64Secret");
+
+			secrets.put(entry.substring(0, colon).trim(), Base64.getDecoder().decode(entry.substring(colon + 1).trim()));
+		}
+
+		if(secrets.isEmpty()) {
+			byte[] secret = new byte[MIN_SECRET_LENGTH];
+			new SecureRandom().nextBytes(secret);
+			secrets.put("local", secret);
+			activeKid = "local";
+
+		} else if(activeKid == null || activeKid.isEmpty()) {
+			// Default to the last key listed
+			for(String kid : secrets.keySet()) activeKid = kid;
+		}
+
+		return new SignedTokens(secrets, activeKid);
+	}
+
+	public String issue(long userId, long expiresAt) {
+		String payload = activeKey.kid + '.' + Long.toString(userId, 36) + '.' + Long.toString(expiresAt, 36);
+
+		return payload + '.' + Base64.getUrlEncoder().withoutPadding().encodeToString(activeKey.sign(payload));
+	}
+
+	/**
+	 * Returns the session a token stands for, or null if it isn't a token signed by one of our keys.
+	 * Nothing in the token is trusted (or even parsed) until its signature has been checked
+	 */
+	public Session verify(String token) {
+		if(token == null) return null;
+
+		int kidEnd = token.indexOf('.');
+		int payloadEnd = token.lastIndexOf('.');
+
+		if(kidEnd < 1 || payloadEnd <= kidEnd) return null;
+
+		SigningKey key = keys.get(token.substring(0, kidEnd));
+
+		if(key == null) return null;
+
+		byte[] signature;
+
+		try {
+			signature = Base64.getUrlDecoder().decode(token.substring(payloadEnd + 1));
+		} catch(IllegalArgumentException ex) {
+			return null;
+		}
+
+		String payload = token.substring(0, payloadEnd);
+
+		if(!MessageDigest.isEqual(key.sign(payload), signature)) return null;
+
+		int userIdEnd = payload.indexOf('.', kidEnd + 1);
+
+		if(userIdEnd < 0) return null;
+
+		return new Session(Long.parseLong(payload.substring(kidEnd + 1, userIdEnd), 36),
+						   Long.parseLong(payload.substring(userIdEnd + 1), 36));
+	}
+
+	/**
+	 * One signing key, with a Mac per thread (Mac instances aren't thread-safe, and are costly to create)
+	 */
+	private static final class SigningKey {
+
+		private final String kid;
+		private final ThreadLocal<Mac> mac;
+
+		SigningKey(String kid, byte[] secret) {
+			if(!kid.matches("[A-Za-z0-9_-]+")) throw new IllegalArgumentException("Token signing key ids may only contain letters, digits, _ and -");
+			if(secret.length < MIN_SECRET_LENGTH) throw new IllegalArgumentException("Token signing key (" + kid + ") must be at least " + MIN_SECRET_LENGTH + " bytes");
+
+			SecretKeySpec keySpec = new SecretKeySpec(secret.clone(), ALGORITHM);
+
+			this.kid = kid;
+			this.mac = ThreadLocal.withInitial(() -> {
+				try {
+					Mac mac = Mac.getInstance(ALGORITHM);
+					mac.init(keySpec);
+					return mac;
+				} catch(GeneralSecurityException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+		}
+
+		byte[] sign(String payload) {
+			return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+}
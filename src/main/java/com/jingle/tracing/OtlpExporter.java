@@ -0,0 +1,219 @@
+package com.jingle.tracing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sends finished traces to an OpenTelemetry collector, as OTLP/HTTP JSON posted to {endpoint}/v1/traces.
+ * Traces are queued and sent in batches by a background thread every second, so a request never
+ * waits on the collector. If the collector falls behind and the queue fills, new traces are dropped
+ *
+ */
+public class OtlpExporter implements SpanExporter {
+
+	private static final int QUEUE_CAPACITY = 1024;
+	private static final int BATCH_SIZE = 64;
+	private static final long EXPORT_INTERVAL = 1000;
+	private static final int TIMEOUT = 5000;
+
+	// OTLP span kinds and status codes
+	private static final int KIND_INTERNAL = 1;
+	private static final int KIND_SERVER = 2;
+	private static final int STATUS_ERROR = 2;
+
+	private final URL url;
+	private final String serviceName;
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final BlockingQueue<Span> queue = new ArrayBlockingQueue<Span>(QUEUE_CAPACITY);
+	private final ScheduledExecutorService sender;
+
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	public OtlpExporter(String endpoint, String serviceName) {
+		try {
+			this.url = new URL(endpoint.replaceAll("/+$", "") + "/v1/traces");
+		} catch(IOException ex) {
+			throw new IllegalArgumentException("Invalid OTLP endpoint " + endpoint, ex);
+		}
+
+		this.serviceName = serviceName;
+
+		this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "trace-export");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		sender.scheduleWithFixedDelay(this::send, EXPORT_INTERVAL, EXPORT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void export(Span root) {
+		if(!queue.offer(root)) {
+			dropped.increment();
+		}
+	}
+
+	@Override
+	public void close() {
+		sender.shutdown();
+
+		try {
+			sender.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		send();
+	}
+
+	/**
+	 * Traces dropped because the queue was full
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Batches the collector didn't accept - the traces in them are lost
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Sends everything queued, BATCH_SIZE traces per request
+	 */
+	void send() {
+		List<Span> batch = new ArrayList<Span>(BATCH_SIZE);
+
+		while(queue.drainTo(batch, BATCH_SIZE) > 0) {
+			try {
+				post(objectMapper.writeValueAsBytes(toOtlp(batch)));
+			} catch(IOException | RuntimeException ex) {
+				// The collector being down mustn't stop later batches being tried
+				failed.increment();
+			}
+
+			batch.clear();
+		}
+	}
+
+	private void post(byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+
+		try {
+			connection.setRequestMethod("POST");
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+
+			try(OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+
+			int status = connection.getResponseCode();
+
+			try(InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				// Drain the response, so the connection can be reused
+				if(in != null) while(in.read() >= 0);
+			}
+
+			if(status >= 300) throw new IOException("OTLP collector returned " + status);
+
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Builds an ExportTraceServiceRequest, in the protobuf JSON mapping OTLP/HTTP uses
+	 */
+	Map<String, Object> toOtlp(List<Span> traces) {
+		List<Object> spans = new ArrayList<Object>();
+
+		for(Span root : traces) {
+			for(Span span : root.flatten()) {
+				spans.add(toOtlp(span));
+			}
+		}
+
+		Map<String, Object> scopeSpans = new LinkedHashMap<String, Object>();
+		scopeSpans.put("scope", Collections.singletonMap("name", "com.jingle.tracing"));
+		scopeSpans.put("spans", spans);
+
+		Map<String, Object> resourceSpans = new LinkedHashMap<String, Object>();
+		resourceSpans.put("resource", Collections.singletonMap("attributes", Collections.singletonList(attribute("service.name", serviceName))));
+		resourceSpans.put("scopeSpans", Collections.singletonList(scopeSpans));
+
+		return Collections.singletonMap("resourceSpans", Collections.singletonList(resourceSpans));
+	}
+
+	private Map<String, Object> toOtlp(Span span) {
+		long start = span.getStartEpochNanos();
+
+		Map<String, Object> otlp = new LinkedHashMap<String, Object>();
+		otlp.put("traceId", span.getTraceId());
+		otlp.put("spanId", span.getSpanId());
+
+		if(span.getParentId() != null) {
+			otlp.put("parentSpanId", span.getParentId());
+		}
+
+		otlp.put("name", span.getName());
+		otlp.put("kind", span.getParent() == null ? KIND_SERVER : KIND_INTERNAL);
+		// 64 bit integers are strings in protobuf's JSON mapping
+		otlp.put("startTimeUnixNano", Long.toString(start));
+		otlp.put("endTimeUnixNano", Long.toString(start + Math.max(span.getDurationNanos(), 0)));
+
+		List<Object> attributes = new ArrayList<Object>();
+		attributes.add(attribute("thread.name", span.getThread()));
+
+		Map<String, String> tags = span.getTags();
+
+		if(tags != null) {
+			for(Map.Entry<String, String> tag : tags.entrySet()) {
+				attributes.add(attribute(tag.getKey(), tag.getValue()));
+			}
+		}
+
+		otlp.put("attributes", attributes);
+
+		if(span.getError() != null) {
+			Map<String, Object> status = new LinkedHashMap<String, Object>();
+			status.put("code", STATUS_ERROR);
+			status.put("message", span.getError());
+
+			otlp.put("status", status);
+		}
+
+		return otlp;
+	}
+
+	private static Map<String, Object> attribute(String key, String value) {
+		Map<String, Object> attribute = new LinkedHashMap<String, Object>();
+		attribute.put("key", key);
+		attribute.put("value", Collections.singletonMap("stringValue", value));
+
+		return attribute;
+	}
+}
@@ -0,0 +1,198 @@
+package com.jingle.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One timed step of a request. A trace is a tree of spans - the root covers the whole request,
+ * and each child covers a call made while its parent was current. Children can be added from
+ * other threads (work handed to the hash pool), so the list is synchronized
+ *
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Span {
+
+	private final String name;
+	private final String traceId;
+	private final String spanId;
+	private final Span parent;
+	private final Span root;
+
+	private final long startEpochMillis;
+	private final long startNanos;
+	private volatile long durationNanos = -1;
+
+	private final String thread;
+	private volatile String error;
+
+	private Map<String, String> tags;
+	private final List<Span> children = new ArrayList<Span>(4);
+
+	// Only used on the root - the most spans the trace may have, the spans in it, and how many were dropped
+	private final int maxSpans;
+	private final AtomicInteger spanCount;
+	private final AtomicInteger droppedSpans;
+
+	/**
+	 * Starts a root span
+	 */
+	Span(String name, String traceId, String spanId, int maxSpans) {
+		this(name, traceId, spanId, null, maxSpans);
+	}
+
+	private Span(String name, String traceId, String spanId, Span parent, int maxSpans) {
+		this.name = name;
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parent = parent;
+		this.root = parent == null ? this : parent.root;
+		this.startNanos = System.nanoTime();
+		this.startEpochMillis = parent == null ? System.currentTimeMillis()
+											   : root.startEpochMillis + (startNanos - root.startNanos) / 1000000;
+		this.thread = Thread.currentThread().getName();
+		this.maxSpans = maxSpans;
+		this.spanCount = parent == null ? new AtomicInteger(1) : null;
+		this.droppedSpans = parent == null ? new AtomicInteger() : null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTraceId() {
+		return traceId;
+	}
+
+	public String getSpanId() {
+		return spanId;
+	}
+
+	public String getParentId() {
+		return parent == null ? null : parent.spanId;
+	}
+
+	@JsonIgnore
+	public Span getParent() {
+		return parent;
+	}
+
+	@JsonIgnore
+	public Span getRoot() {
+		return root;
+	}
+
+	public long getStartEpochMillis() {
+		return startEpochMillis;
+	}
+
+	/**
+	 * Nanoseconds since the epoch - from the root's wall clock time, plus the monotonic clock after that
+	 */
+	@JsonIgnore
+	public long getStartEpochNanos() {
+		return root.startEpochMillis * 1000000 + (startNanos - root.startNanos);
+	}
+
+	/**
+	 * Microseconds the span took, or -1 if it hasn't finished
+	 */
+	public long getDurationMicros() {
+		return durationNanos < 0 ? -1 : durationNanos / 1000;
+	}
+
+	@JsonIgnore
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	@JsonIgnore
+	public boolean isFinished() {
+		return durationNanos >= 0;
+	}
+
+	public String getThread() {
+		return thread;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(Throwable ex) {
+		this.error = ex.getClass().getSimpleName();
+	}
+
+	public synchronized Map<String, String> getTags() {
+		return tags == null ? null : new LinkedHashMap<String, String>(tags);
+	}
+
+	public synchronized void tag(String key, String value) {
+		if(tags == null) tags = new LinkedHashMap<String, String>();
+
+		tags.put(key, value);
+	}
+
+	public List<Span> getChildren() {
+		synchronized(children) {
+			return children.isEmpty() ? null : new ArrayList<Span>(children);
+		}
+	}
+
+	/**
+	 * Spans left out of this trace because it already had the most allowed
+	 */
+	public Integer getDroppedSpans() {
+		return droppedSpans == null || droppedSpans.get() == 0 ? null : droppedSpans.get();
+	}
+
+	/**
+	 * Every span in the tree under (and including) this one, parents before children
+	 */
+	public List<Span> flatten() {
+		List<Span> spans = new ArrayList<Span>();
+		flattenInto(spans);
+
+		return Collections.unmodifiableList(spans);
+	}
+
+	private void flattenInto(List<Span> spans) {
+		spans.add(this);
+
+		synchronized(children) {
+			for(Span child : children) {
+				child.flattenInto(spans);
+			}
+		}
+	}
+
+	/**
+	 * Starts a child, unless the trace already has as many spans as it may
+	 */
+	Span child(String name, String spanId) {
+		if(root.spanCount.incrementAndGet() > root.maxSpans) {
+			root.droppedSpans.incrementAndGet();
+			return null;
+		}
+
+		Span child = new Span(name, traceId, spanId, this, 0);
+
+		synchronized(children) {
+			children.add(child);
+		}
+
+		return child;
+	}
+
+	void finish() {
+		if(durationNanos < 0) {
+			durationNanos = System.nanoTime() - startNanos;
+		}
+	}
+}
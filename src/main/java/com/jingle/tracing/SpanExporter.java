@@ -0,0 +1,18 @@
+package com.jingle.tracing;
+
+/**
+ * Receives each sampled trace once its request has finished
+ *
+ */
+public interface SpanExporter {
+
+	/**
+	 * Called on the thread that finished the request - must not block
+	 */
+	void export(Span root);
+
+	/**
+	 * Sends anything still waiting, and stops
+	 */
+	void close();
+}
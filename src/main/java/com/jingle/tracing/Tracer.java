@@ -0,0 +1,202 @@
+package com.jingle.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process request tracing. A sampled request gets a root span, which is made current on the
+ * thread handling it; spans started while a span is current become its children. Finished traces
+ * go into a ring buffer holding the last bufferSize of them, and to the exporter if there is one.
+ * When a request isn't sampled no span is current, and starting a span is one ThreadLocal read
+ * that returns null - so with sampling off, tracing costs next to nothing.
+ * Spans are started and ended explicitly (startSpan/endSpan are static, so any class can), rather
+ * than by proxying every traced bean - a proxy costs far more than that on every call, traced or not
+ *
+ */
+@Component
+public class Tracer {
+
+	private static final ThreadLocal<Span> CURRENT = new ThreadLocal<Span>();
+
+	private final double sampleRate;
+	private final int maxSpans;
+
+	private final AtomicReferenceArray<Span> traces;
+	private final AtomicLong tracesRecorded = new AtomicLong();
+
+	private final SpanExporter exporter;
+
+	@Autowired
+	Tracer(@Value("${jingle.tracing.sample-rate:0}") double sampleRate,
+		   @Value("${jingle.tracing.buffer-size:100}") int bufferSize,
+		   @Value("${jingle.tracing.max-spans:256}") int maxSpans,
+		   @Value("${jingle.tracing.otlp.endpoint:}") String otlpEndpoint,
+		   @Value("${jingle.tracing.otlp.service-name:jingle}") String serviceName) {
+
+		this(sampleRate, bufferSize, maxSpans, otlpEndpoint.isEmpty() ? null : new OtlpExporter(otlpEndpoint, serviceName));
+	}
+
+	Tracer(double sampleRate, int bufferSize, int maxSpans, SpanExporter exporter) {
+		if(sampleRate < 0 || sampleRate > 1) throw new IllegalArgumentException("Trace sample rate must be between 0 and 1");
+		if(bufferSize < 1) throw new IllegalArgumentException("Trace buffer size must be at least 1");
+		if(maxSpans < 1) throw new IllegalArgumentException("Spans per trace must be at least 1");
+
+		this.sampleRate = sampleRate;
+		this.maxSpans = maxSpans;
+		this.traces = new AtomicReferenceArray<Span>(bufferSize);
+		this.exporter = exporter;
+	}
+
+	/**
+	 * Decides whether to trace a request. Returns its root span (not yet current on any thread),
+	 * or null if it isn't sampled
+	 */
+	public Span startTrace(String name) {
+		if(sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) return null;
+
+		return new Span(name, randomId() + randomId(), randomId(), maxSpans);
+	}
+
+	/**
+	 * Finishes a trace, and records it. Can be called from any thread
+	 */
+	public void endTrace(Span root) {
+		root.finish();
+
+		traces.set((int)(tracesRecorded.getAndIncrement() % traces.length()), root);
+
+		if(exporter != null) {
+			exporter.export(root);
+		}
+	}
+
+	/**
+	 * The last bufferSize traces, newest first. Traces still running are left out
+	 */
+	public List<Span> getTraces() {
+		List<Span> recent = new ArrayList<Span>(traces.length());
+		long newest = tracesRecorded.get() - 1;
+
+		for(long i = newest; i >= 0 && i > newest - traces.length(); i--) {
+			Span trace = traces.get((int)(i % traces.length()));
+
+			if(trace != null && trace.isFinished()) recent.add(trace);
+		}
+
+		return recent;
+	}
+
+	public long getTracesRecorded() {
+		return tracesRecorded.get();
+	}
+
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	@PreDestroy
+	public void close() {
+		if(exporter != null) {
+			exporter.close();
+		}
+	}
+
+	/**
+	 * Starts a child of the current span and makes it current. Returns null (and does nothing)
+	 * if there is no current span, or the trace already has maxSpans spans
+	 */
+	public static Span startSpan(String name) {
+		Span parent = CURRENT.get();
+
+		if(parent == null) return null;
+
+		Span span = parent.child(name, randomId());
+
+		if(span != null) {
+			CURRENT.set(span);
+		}
+
+		return span;
+	}
+
+	/**
+	 * Finishes a span from startSpan(...), and makes its parent current again. Does nothing given null,
+	 * so callers can end whatever startSpan(...) returned
+	 */
+	public static void endSpan(Span span) {
+		if(span == null) return;
+
+		span.finish();
+		CURRENT.set(span.getParent());
+	}
+
+	/**
+	 * endSpan(...), recording that the span failed
+	 */
+	public static void endSpan(Span span, Throwable ex) {
+		if(span == null) return;
+
+		span.setError(ex);
+		endSpan(span);
+	}
+
+	/**
+	 * The span current on this thread, if any
+	 */
+	public static Span current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Makes span current on this thread, returning whatever was current before - pass that to restore(...)
+	 */
+	public static Span attach(Span span) {
+		Span previous = CURRENT.get();
+		CURRENT.set(span);
+
+		return previous;
+	}
+
+	public static void restore(Span previous) {
+		if(previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * Carries the current span over to whichever thread runs the task, so spans started there
+	 * join the same trace. Returns the task itself if nothing is being traced
+	 */
+	public static Runnable wrap(Runnable task) {
+		Span span = CURRENT.get();
+
+		if(span == null) return task;
+
+		return () -> {
+			Span previous = attach(span);
+
+			try {
+				task.run();
+			} finally {
+				restore(previous);
+			}
+		};
+	}
+
+	private static String randomId() {
+		String hex = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+		return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+	}
+}
@@ -0,0 +1,40 @@
+package com.jingle.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * GET /actuator/traces - the traces in the Tracer's ring buffer, newest first, as span trees.
+ * ?minMillis=500 leaves out traces quicker than that
+ *
+ */
+@Component
+@Endpoint(id = "traces")
+public class TracesEndpoint {
+
+	private final Tracer tracer;
+
+	TracesEndpoint(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@ReadOperation
+	public List<Span> traces(@Nullable Long minMillis) {
+		List<Span> traces = tracer.getTraces();
+
+		if(minMillis == null) return traces;
+
+		List<Span> slow = new ArrayList<Span>();
+
+		for(Span trace : traces) {
+			if(trace.getDurationMicros() >= minMillis * 1000) slow.add(trace);
+		}
+
+		return slow;
+	}
+}
@@ -0,0 +1,47 @@
+package com.jingle.tracing;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gives every call to UserRepository a span, named UserRepository.method. The repository is already
+ * a proxy (and timed by RepositoryMetricsAspect), so this is one more advice on calls that each cost
+ * a database round trip. When the request isn't being traced the call goes straight through
+ *
+ */
+@Aspect
+@Component
+public class TracingAspect {
+
+	private final Map<Method, String> spanNames = new ConcurrentHashMap<Method, String>();
+
+	@Around("this(com.jingle.repositories.UserRepository) && execution(public * *(..)) && !execution(* java.lang.Object.*(..))")
+	public Object trace(ProceedingJoinPoint joinPoint) throws Throwable {
+		if(Tracer.current() == null) return joinPoint.proceed();
+
+		// Most methods are declared on Spring Data's interfaces - name them all after UserRepository
+		Span span = Tracer.startSpan(spanNames.computeIfAbsent(((MethodSignature)joinPoint.getSignature()).getMethod(),
+															   method -> "UserRepository." + method.getName()));
+
+		if(span == null) return joinPoint.proceed();
+
+		try {
+
+			return joinPoint.proceed();
+
+		} catch(Throwable ex) {
+			span.setError(ex);
+			throw ex;
+
+		} finally {
+			Tracer.endSpan(span);
+		}
+	}
+}
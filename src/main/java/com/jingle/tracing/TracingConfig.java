@@ -0,0 +1,73 @@
+package com.jingle.tracing;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import javax.servlet.DispatcherType;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Registers the tracing filter and the controller span interceptor, and replaces Spring Boot's JSON
+ * message converter with one that gives writing the response body its own span - otherwise the time
+ * spent serializing would only show up as a gap in the root span
+ *
+ */
+@Configuration
+public class TracingConfig implements WebMvcConfigurer {
+
+	/**
+	 * First in the chain, so the root span covers every other filter. It also has to see async
+	 * dispatches, which is where the response of an async endpoint is written
+	 */
+	@Bean
+	public FilterRegistrationBean<TracingFilter> tracingFilter(Tracer tracer) {
+		FilterRegistrationBean<TracingFilter> registration = new FilterRegistrationBean<TracingFilter>(new TracingFilter(tracer));
+		registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+
+		return registration;
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new TracingInterceptor());
+	}
+
+	@Bean
+	public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+		return new MappingJackson2HttpMessageConverter(objectMapper) {
+
+			@Override
+			protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+				Span span = Tracer.startSpan("Jackson.write");
+
+				if(span == null) {
+					super.writeInternal(object, type, outputMessage);
+					return;
+				}
+
+				if(object != null) span.tag("type", object.getClass().getSimpleName());
+
+				try {
+					super.writeInternal(object, type, outputMessage);
+				} catch(IOException | RuntimeException ex) {
+					span.setError(ex);
+					throw ex;
+				} finally {
+					Tracer.endSpan(span);
+				}
+			}
+		};
+	}
+}
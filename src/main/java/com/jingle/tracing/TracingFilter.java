@@ -0,0 +1,119 @@
+package com.jingle.tracing;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Starts the root span for each sampled request, and makes it current while the request is handled.
+ * The endpoints are async - the controller returns a future, and the response is written in a second
+ * (async) dispatch once it completes - so the root is kept on the request, made current again for that
+ * dispatch, and only ended when the async request completes. Registered by TracingConfig
+ *
+ */
+public class TracingFilter extends OncePerRequestFilter {
+
+	private static final String ROOT_SPAN = TracingFilter.class.getName() + ".ROOT_SPAN";
+
+	private final Tracer tracer;
+
+	TracingFilter(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+		Span root;
+
+		if(isAsyncDispatch(request)) {
+			root = (Span)request.getAttribute(ROOT_SPAN);
+		} else {
+			root = tracer.startTrace(request.getMethod() + " " + request.getRequestURI());
+
+			if(root != null) {
+				root.tag("http.method", request.getMethod());
+				root.tag("http.target", request.getRequestURI());
+				request.setAttribute(ROOT_SPAN, root);
+			}
+		}
+
+		if(root == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		Span previous = Tracer.attach(root);
+
+		try {
+
+			chain.doFilter(request, response);
+
+		} catch(IOException | ServletException | RuntimeException ex) {
+			root.setError(ex);
+			throw ex;
+
+		} finally {
+			Tracer.restore(previous);
+
+			if(request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new EndTraceListener(root, response));
+			} else {
+				endTrace(root, response);
+			}
+		}
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		// Don't fill the buffer with requests for its own contents
+		return request.getRequestURI().startsWith("/actuator");
+	}
+
+	private void endTrace(Span root, HttpServletResponse response) {
+		root.tag("http.status_code", Integer.toString(response.getStatus()));
+		tracer.endTrace(root);
+	}
+
+	private final class EndTraceListener implements AsyncListener {
+
+		private final Span root;
+		private final HttpServletResponse response;
+
+		EndTraceListener(Span root, HttpServletResponse response) {
+			this.root = root;
+			this.response = response;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			endTrace(root, response);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			root.tag("error", "timeout");
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			if(event.getThrowable() != null) root.setError(event.getThrowable());
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// A listener added during one async cycle is carried over to the next - nothing to do
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.jingle.tracing;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Gives the controller method handling a traced request a span, named UserController.method.
+ * It ends when the method returns - for the async endpoints, once it has handed back its future.
+ * The async dispatch that writes the response calls the handler again, but isn't given a span of
+ * its own, so the response body's span sits directly under the root
+ *
+ */
+public class TracingInterceptor implements AsyncHandlerInterceptor {
+
+	private static final String HANDLER_SPAN = TracingInterceptor.class.getName() + ".HANDLER_SPAN";
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if(Tracer.current() == null || !(handler instanceof HandlerMethod) || request.getDispatcherType() == DispatcherType.ASYNC) return true;
+
+		HandlerMethod method = (HandlerMethod)handler;
+		Span span = Tracer.startSpan(method.getBeanType().getSimpleName() + "." + method.getMethod().getName());
+
+		if(span != null) {
+			request.setAttribute(HANDLER_SPAN, span);
+		}
+
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		end(request, null);
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		end(request, ex);
+	}
+
+	private static void end(HttpServletRequest request, Exception ex) {
+		Span span = (Span)request.getAttribute(HANDLER_SPAN);
+
+		if(span == null) return;
+
+		request.removeAttribute(HANDLER_SPAN);
+
+		if(ex != null) {
+			Tracer.endSpan(span, ex);
+		} else {
+			Tracer.endSpan(span);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.jingle.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps a concurrent map of expiring entries within maxSize - the eviction shared by the
+ * session store and the caches. Removes every expired entry, then, if the map is still
+ * over maxSize, the entries closest to expiring down to 90% of it, so a full map isn't
+ * re-sorted on every put. Only one thread evicts at a time - others return straight away
+ *
+ */
+public final class Evictor<K, V> {
+
+	private final Map<K, V> map;
+	private final int maxSize;
+	private final int lowWatermark;
+	private final ToLongFunction<V> expiresAt;
+	private final BiConsumer<K, V> onEvict;
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	/**
+	 * onEvict is given each entry this evictor removes (not ones removed from the map by anything else)
+	 */
+	public Evictor(Map<K, V> map, int maxSize, ToLongFunction<V> expiresAt, BiConsumer<K, V> onEvict) {
+		this.map = map;
+		this.maxSize = maxSize;
+		this.lowWatermark = maxSize - maxSize / 10;
+		this.expiresAt = expiresAt;
+		this.onEvict = onEvict;
+	}
+
+	public void evict(long now) {
+		if(!evicting.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			map.forEach((key, value) -> {
+				if(expiresAt.applyAsLong(value) <= now) remove(key, value);
+			});
+
+			if(map.size() <= maxSize) {
+				return;
+			}
+
+			List<Map.Entry<K, V>> entries = new ArrayList<Map.Entry<K, V>>(map.entrySet());
+			entries.sort(Comparator.comparingLong(entry -> expiresAt.applyAsLong(entry.getValue())));
+
+			int overflow = map.size() - lowWatermark;
+
+			for(int i = 0; i < entries.size() && overflow > 0; i++) {
+				if(remove(entries.get(i).getKey(), entries.get(i).getValue())) overflow--;
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private boolean remove(K key, V value) {
+		if(!map.remove(key, value)) {
+			return false;
+		}
+
+		onEvict.accept(key, value);
+		return true;
+	}
+}
@@ -0,0 +1,47 @@
+package db.migration.common;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import com.jingle.models.User;
+
+/**
+ * V2 filled the normalized columns with SQL lower(...), whose idea of lower case is the database's
+ * (and for H2, the JVM's default locale) rather than User.normalize(...)'s - so rewrites every row
+ * where the two disagree, leaving the columns exactly as the application's lookups expect.
+ * Runs on every database, alongside the vendor's own migrations
+ *
+ */
+public class V3__renormalize_username_email extends BaseJavaMigration {
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+
+		try(Statement select = connection.createStatement();
+			ResultSet rows = select.executeQuery("select id, username, email_address, username_normalized, email_address_normalized from users");
+			PreparedStatement update = connection.prepareStatement("update users set username_normalized = ?, email_address_normalized = ? where id = ?")) {
+
+			while(rows.next()) {
+				String username = User.normalize(rows.getString("username"));
+				String emailAddress = User.normalize(rows.getString("email_address"));
+
+				if(username.equals(rows.getString("username_normalized")) && emailAddress.equals(rows.getString("email_address_normalized"))) {
+					continue;
+				}
+
+				update.setString(1, username);
+				update.setString(2, emailAddress);
+				update.setLong(3, rows.getLong("id"));
+				update.addBatch();
+			}
+
+			update.executeBatch();
+		}
+	}
+}
@@ -0,0 +1,3 @@
+-- auth_session.auth_key now holds the SHA-256 of each key rather than the key itself. Rows written
+-- before that hold usable plaintext keys that no lookup can match any more - drop them, which logs those sessions out
+delete from auth_session;
@@ -0,0 +1,16 @@
+-- Case-insensitive lookups go through lower-cased copies of username and email_address, which
+-- User's setters keep up to date. The unique constraints move onto the copies, so names that differ
+-- only in case now clash - if any existing users do, this migration fails until they are renamed
+alter table users add column username_normalized varchar(255);
+alter table users add column email_address_normalized varchar(255);
+
+update users set username_normalized = lower(username), email_address_normalized = lower(email_address);
+
+alter table users alter column username_normalized set not null;
+alter table users alter column email_address_normalized set not null;
+
+alter table users drop constraint uk_users_username;
+alter table users drop constraint uk_users_email_address;
+
+alter table users add constraint uk_users_username unique (username_normalized);
+alter table users add constraint uk_users_email_address unique (email_address_normalized);
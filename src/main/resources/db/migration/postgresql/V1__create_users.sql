@@ -0,0 +1,30 @@
+-- Ids are reserved in blocks of spring.jpa.properties.jingle.id.allocation-size (the idAllocationSize placeholder).
+-- Changing that later doesn't alter the sequence - UserSequenceCheck stops startup until the two match again
+create sequence user_seq start with 1 increment by ${idAllocationSize};
+
+create table users (
+    id bigint not null,
+    username varchar(255),
+    first_name varchar(255),
+    last_name varchar(255),
+    email_address varchar(255),
+    password_hash bytea,
+    password_algorithm varchar(255),
+    password_iterations integer,
+    password_salt bytea,
+    constraint pk_users primary key (id),
+    constraint uk_users_username unique (username),
+    constraint uk_users_email_address unique (email_address)
+);
+
+-- Used by the jdbc session store (jingle.session.store=jdbc), which relies on this migration to create it
+create table auth_session (
+    auth_key varchar(128) not null,
+    user_id bigint not null,
+    expires_at bigint not null,
+    issued_at bigint default 0 not null,
+    idle_timeout bigint default 0 not null,
+    constraint pk_auth_session primary key (auth_key)
+);
+
+create index ix_auth_session_expires_at on auth_session (expires_at);
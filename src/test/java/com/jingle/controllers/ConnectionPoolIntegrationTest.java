@@ -0,0 +1,103 @@
+package com.jingle.controllers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.web.server.LocalManagementPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+import io.restassured.RestAssured;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true",
+								  "spring.datasource.hikari.maximum-pool-size=2", "spring.datasource.hikari.connection-timeout=250"})
+public class ConnectionPoolIntegrationTest {
+	
+	@LocalServerPort
+	private int port;
+	
+	@LocalManagementPort
+	private int managementPort;
+	
+	@Autowired
+	private DataSource dataSource;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	@Test
+	public void testPoolExhausted() throws SQLException {
+		int userId =	given().
+							param("username", "connectionPoolTest").and().
+							param("firstname", "Jingle").and().
+							param("lastname", "Bells").and().
+							param("email", "connectionPoolTest@bells.com").and().
+							param("password", "jingle123").and().
+							header("Content-Type", "application/x-www-form-urlencoded").
+						when().
+							post("/signup").
+						then().
+							statusCode(201).
+							extract().
+							jsonPath().getInt("id");
+		
+		// Hold both connections (Flyway needs two to start), so the lookup times out waiting for one
+		try(Connection first = dataSource.getConnection(); Connection second = dataSource.getConnection()) {
+			given().
+					param("userid", userId).
+			when().
+					get("/user").
+			then().
+					statusCode(503).
+					header("Retry-After", "1");
+		}
+		
+		given().
+				param("userid", userId).
+		when().
+				get("/user").
+		then().
+				statusCode(200);
+		
+		given().
+				port(managementPort).
+		when().
+				get("/actuator/prometheus").
+		then().
+				statusCode(200).
+				body(containsString("hikaricp_connections_max{pool=\"jingle\",} 2.0")).
+				body(containsString("hikaricp_connections_active{pool=\"jingle\",}")).
+				body(containsString("hikaricp_connections_pending{pool=\"jingle\",}")).
+				body(containsString("hikaricp_connections_acquire_seconds_bucket{pool=\"jingle\"")).
+				body(containsString("hikaricp_connections_timeout_total{pool=\"jingle\",} 1.0"));
+	}
+}
@@ -0,0 +1,93 @@
+package com.jingle.controllers;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.autoconfigure.web.server.LocalManagementPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+import io.restassured.RestAssured;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true"})
+public class MetricsIntegrationTest {
+	
+	@LocalServerPort
+	private int port;
+	
+	@LocalManagementPort
+	private int managementPort;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	@Test
+	public void testPrometheusScrape() {
+		given().
+				param("username", "metricsTest").and().
+				param("firstname", "Jingle").and().
+				param("lastname", "Bells").and().
+				param("email", "metricsTest@bells.com").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/signup").
+		then().
+				statusCode(201);
+		
+		given().
+				param("username", "metricsTest").and().
+				param("password", "jingle124").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+				statusCode(401);
+		
+		given().
+				port(managementPort).
+		when().
+				get("/actuator/prometheus").
+		then().
+				statusCode(200).
+				body(containsString("http_server_requests_seconds_bucket{exception=\"None\",method=\"POST\",outcome=\"SUCCESS\",status=\"201\",uri=\"/signup\"")).
+				body(containsString("uri=\"/login\"")).
+				body(containsString("jingle_password_hash_seconds_bucket{operation=\"hash\"")).
+				body(containsString("jingle_password_hash_seconds_count{operation=\"verify\",} 1.0")).
+				body(containsString("jingle_errors_total{exception=\"LoginFailedException\",} 1.0")).
+				body(containsString("jingle_repository_calls_seconds_count{exception=\"none\",method=\"save\"")).
+				body(containsString("jingle_repository_calls_seconds_count{exception=\"none\",method=\"findByUsernameNormalized\"")).
+				body(containsString("jingle_sessions_active")).
+				body(containsString("jingle_login_cache_requests_total{result=\"miss\",}")).
+				body(containsString("jingle_rate_limit_rejections_total{endpoint=\"login\",}"));
+		
+		// Not on the public port
+		when().
+				get("/actuator/prometheus").
+		then().
+				statusCode(404);
+	}
+}
@@ -0,0 +1,121 @@
+package com.jingle.controllers;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.autoconfigure.web.server.LocalManagementPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import io.restassured.RestAssured;
+import io.restassured.path.json.JsonPath;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true", "jingle.tracing.sample-rate=1"})
+public class TracingIntegrationTest {
+	
+	@LocalServerPort
+	private int port;
+	
+	@LocalManagementPort
+	private int managementPort;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	@Test
+	public void testEditTrace() {
+		int userId =	given().
+							param("username", "tracingTest").and().
+							param("firstname", "Jingle").and().
+							param("lastname", "Bells").and().
+							param("email", "tracingTest@bells.com").and().
+							param("password", "jingle123").and().
+							header("Content-Type", "application/x-www-form-urlencoded").
+						when().
+							post("/signup").
+						then().
+							statusCode(201).
+							extract().
+							jsonPath().getInt("id");
+		
+		String authKey =	given().
+								param("username", "tracingTest").and().
+								param("password", "jingle123").and().
+								header("Content-Type", "application/x-www-form-urlencoded").
+							when().
+								post("/login").
+							then().
+								statusCode(200).
+								extract().
+								jsonPath().getString("authKey");
+		
+		given().
+				param("userid", userId).and().
+				param("password", "jingle124").and().
+				header("Auth-Key", authKey).
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				put("/edit").
+		then().
+				statusCode(200);
+		
+		JsonPath traces =	given().
+								port(managementPort).
+							when().
+								get("/actuator/traces").
+							then().
+								statusCode(200).
+								body("name", hasItems("POST /signup", "POST /login", "PUT /edit")).
+								body("name", not(hasItem(startsWith("GET /actuator")))).
+								extract().
+								jsonPath();
+		
+		traces.setRoot("find { it.name == 'PUT /edit' }");
+		
+		assertTrue(traces.getString("traceId").matches("[0-9a-f]{32}"));
+		assertThat(traces.getString("tags.'http.status_code'"), equalTo("200"));
+		assertThat(traces.getList("children.name"), hasItems("UserController.editUser", "Jackson.write"));
+		
+		traces.setRoot("find { it.name == 'PUT /edit' }.children.find { it.name == 'UserController.editUser' }.children[0]");
+		
+		assertThat(traces.getString("name"), equalTo("UserControllerHelper.editUser"));
+		assertThat(traces.getList("children.name"), hasItems("AuthService.isValidAuthKey", "AuthService.hashPassword", "UserRepository.updateUser"));
+		assertThat(traces.getString("children.find { it.name == 'AuthService.hashPassword' }.thread"), startsWith("password-hash-"));
+		// ...but the write that follows it isn't left holding a hashing thread
+		assertThat(traces.getString("children.find { it.name == 'UserRepository.updateUser' }.thread"), not(startsWith("password-hash-")));
+		
+		// Only the slow ones - nothing here took a minute
+		given().
+				port(managementPort).
+		when().
+				get("/actuator/traces?minMillis=60000").
+		then().
+				statusCode(200).
+				body("size()", equalTo(0));
+	}
+}
@@ -0,0 +1,175 @@
+package com.jingle.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true", "spring.jpa.properties.hibernate.generate_statistics=true", "jingle.user-batch.max-size=6"})
+public class UserBatchGetIntegrationTest {
+	
+	private List<Integer> userIds;
+	
+	@LocalServerPort
+	private int port;
+	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	public void prepare(String prefix, int count) {
+		userIds = new ArrayList<Integer>();
+		
+		for(int i = 1; i <= count; i++) {
+			userIds.add(given().
+								param("username", prefix + i).and().
+								param("firstname", "Jingle").and().
+								param("lastname", "Bells").and().
+								param("email", prefix + i + "@bells.com").and().
+								param("password", "jingle123").and().
+								header("Content-Type", "application/x-www-form-urlencoded").
+						when().
+								post("/signup").
+						then().
+								extract().
+								jsonPath().getInt("id"));
+		}
+	}
+
+	@Test
+	public void testSuccessfulBatchGet_IdsAndUsernames() {
+		prepare("userBatchTest", 3);
+		
+		given().
+				param("userids", userIds.get(1) + "," + userIds.get(0) + ",999999").and().
+				param("usernames", "userBatchTest3,userBatchTest1,userBatchTestX").
+		when().
+				get("/users/batch").
+		then().
+		        statusCode(200).
+		        contentType(ContentType.JSON).
+		        body("users.username", contains("userBatchTest2", "userBatchTest1", "userBatchTest3")).
+		        body("missingIds", contains(999999)).
+		        body("missingUsernames", contains("userBatchTestX"));
+	}
+	
+	@Test
+	public void testSuccessfulBatchGet_UsernamesInOtherCase() {
+		prepare("userBatchCaseTest", 2);
+		
+		given().
+				param("usernames", "USERBATCHCASETEST2,userbatchcasetest1,userBatchCaseTest1").
+		when().
+				get("/users/batch").
+		then().
+		        statusCode(200).
+		        body("users.username", contains("userBatchCaseTest2", "userBatchCaseTest1")).
+		        body("missingUsernames", empty());
+	}
+	
+	@Test
+	public void testSuccessfulBatchGet_OneQueryThenCached() {
+		prepare("userBatchCacheTest", 3);
+		
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		
+		given().
+				param("userids", userIds.get(0) + "," + userIds.get(1) + "," + userIds.get(2)).
+		when().
+				get("/users/batch").
+		then().
+		        statusCode(200).
+		        body("users.id", contains(userIds.get(0), userIds.get(1), userIds.get(2))).
+		        body("missingIds", empty());
+		
+		// All three ids resolved with one query
+		assertEquals(1, statistics.getPrepareStatementCount());
+		
+		given().
+				param("userids", userIds.get(2) + "," + userIds.get(0)).and().
+				param("usernames", "userBatchCacheTest2").
+		when().
+				get("/users/batch").
+		then().
+		        statusCode(200).
+		        body("users.username", contains("userBatchCacheTest3", "userBatchCacheTest1", "userBatchCacheTest2"));
+		
+		// ...and then straight from the cache
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+	
+	@Test
+	public void testUnsuccessfulBatchGet_NoParams() {
+		
+		when().
+				get("/users/batch").
+		then().
+		        statusCode(400).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("Either userids or usernames must be provided"));
+	}
+	
+	@Test
+	public void testUnsuccessfulBatchGet_TooMany() {
+		
+		given().
+				param("userids", "1,2,3,4").and().
+				param("usernames", "a,b,c").
+		when().
+				get("/users/batch").
+		then().
+		        statusCode(400).
+		        body("error", equalTo("No more than 6 userids and usernames can be requested at once"));
+	}
+	
+	@Test
+	public void testUnsuccessfulBatchGet_NonNumericUserId() {
+		
+		given().
+				param("userids", "1,abc").
+		when().
+				get("/users/batch").
+		then().
+		        statusCode(400).
+		        body("error", equalTo("Userids must be a numeric value"));
+	}
+}
@@ -0,0 +1,210 @@
+package com.jingle.controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+import io.restassured.path.json.JsonPath;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true", "jingle.bulk-signup.chunk-size=2",
+								  "jingle.bulk-signup.max-line-length=200", "jingle.bulk-signup.admin-key=" + UserBulkSignUpIntegrationTest.ADMIN_KEY})
+public class UserBulkSignUpIntegrationTest {
+	
+	static final String ADMIN_KEY = "bulkSignUpTestKey";
+	
+	@LocalServerPort
+	private int port;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	private String[] bulkSignUp(String contentType, String body) {
+		return	given().
+						header("Admin-Key", ADMIN_KEY).
+						header("Content-Type", contentType).
+						body(body.getBytes(StandardCharsets.UTF_8)).
+				when().
+						post("/signup/bulk").
+				then().
+						statusCode(200).
+						contentType("application/x-ndjson").
+						extract().
+						asString().
+						split("\n");
+	}
+
+	@Test
+	public void testSuccessfulBulkSignup_Csv() {
+		String[] results = bulkSignUp("text/csv",
+				"username,firstname,lastname,email,password\n" +
+				"bulkCsvTest1,Jingle,Bells,bulkCsvTest1@bells.com,jingle123\n" +
+				"bulkCsvTest2,\"Jingle, Jr\",Bells,bulkCsvTest2@bells.com,jingle123\n" +
+				"bulkCsvTest3,Jingle,Bells,bulkCsvTest3@bells.com,jingle123\n");
+		
+		assertEquals(3, results.length);
+		
+		for(int i = 0; i < results.length; i++) {
+			JsonPath result = new JsonPath(results[i]);
+			
+			assertEquals(i + 1, result.getInt("row"));
+			assertEquals("bulkCsvTest" + (i + 1), result.getString("username"));
+			assertThat(result.get("id"), isA(Integer.class));
+		}
+		
+		given().
+				param("username", "bulkCsvTest2").
+		when().
+				get("/user").
+		then().
+		        statusCode(200).
+		        body("firstName", equalTo("Jingle, Jr"));
+		
+		given().
+				param("username", "bulkCsvTest3").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(200);
+	}
+	
+	@Test
+	public void testPartialBulkSignup_Ndjson() {
+		String[] results = bulkSignUp("application/x-ndjson",
+				"{\"username\":\"bulkJsonTest1\",\"firstname\":\"Jingle\",\"lastname\":\"Bells\",\"email\":\"bulkJsonTest1@bells.com\",\"password\":\"jingle123\"}\n" +
+				"{\"username\":\"bulkJsonTest1\",\"firstname\":\"Jingle\",\"lastname\":\"Bells\",\"email\":\"bulkJsonTestDup@bells.com\",\"password\":\"jingle123\"}\n" +
+				"{\"username\":\"bulkJsonTest3\",\"firstname\":\"Jingle\",\"lastname\":\"Bells\",\"email\":\"bulkJsonTest3@bells.com\",\"password\":\"jingle\"}\n" +
+				"{\"username\":\"bulkJsonTest4\",\"firstname\":\"Jingle\",\"lastname\":\"Bells\",\"password\":\"jingle123\"}\n" +
+				"not json\n" +
+				"{\"username\":\"bulkJsonTest6\",\"firstname\":\"Jingle\",\"lastname\":\"Bells\",\"email\":\"bulkJsonTest6@bells.com\",\"password\":\"jingle123\"}\n");
+		
+		assertEquals(6, results.length);
+		
+		assertEquals("bulkJsonTest1", new JsonPath(results[0]).getString("username"));
+		assertEquals("Username already taken", new JsonPath(results[1]).getString("error"));
+		assertEquals("Password must be a minimum of 8 characters long", new JsonPath(results[2]).getString("error"));
+		assertEquals("Required field 'email' is not present", new JsonPath(results[3]).getString("error"));
+		assertEquals("Row is not a valid JSON object", new JsonPath(results[4]).getString("error"));
+		assertEquals("bulkJsonTest6", new JsonPath(results[5]).getString("username"));
+	}
+	
+	@Test
+	public void testUnsuccessfulBulkSignup_WrongContentType() {
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				header("Content-Type", "application/json").
+				body("[]").
+		when().
+				post("/signup/bulk").
+		then().
+		        statusCode(400).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("Bulk signup body must be text/csv or application/x-ndjson"));
+	}
+	
+	@Test
+	public void testUnsuccessfulBulkSignup_NoAdminKey() {
+		
+		given().
+				header("Content-Type", "text/csv").
+				body("bulkNoKeyTest,Jingle,Bells,bulkNoKeyTest@bells.com,jingle123\n").
+		when().
+				post("/signup/bulk").
+		then().
+		        statusCode(401).
+		        body("error", equalTo("Invalid auth key"));
+		
+		given().
+				header("Admin-Key", "notTheKey").
+				header("Content-Type", "text/csv").
+				body("bulkNoKeyTest,Jingle,Bells,bulkNoKeyTest@bells.com,jingle123\n").
+		when().
+				post("/signup/bulk").
+		then().
+		        statusCode(401);
+		
+		given().
+				param("username", "bulkNoKeyTest").
+		when().
+				get("/user").
+		then().
+		        statusCode(400);
+	}
+	
+	@Test
+	public void testPartialBulkSignup_LineTooLong() {
+		String[] results = bulkSignUp("text/csv",
+				"bulkLongTest1,Jingle,Bells,bulkLongTest1@bells.com,jingle123\n" +
+				"bulkLongTest2,Jingle,Bells,bulkLongTest2@bells.com," + String.join("", Collections.nCopies(200, "x")) + "\n" +
+				"bulkLongTest3,Jingle,Bells,bulkLongTest3@bells.com,jingle123\n");
+		
+		assertEquals(3, results.length);
+		
+		// Only the long row fails - the rest of it is skipped, and the rows around it are saved
+		assertEquals("bulkLongTest1", new JsonPath(results[0]).getString("username"));
+		assertEquals(2, new JsonPath(results[1]).getInt("row"));
+		assertEquals("Rows can be at most 200 characters long", new JsonPath(results[1]).getString("error"));
+		assertEquals("bulkLongTest3", new JsonPath(results[2]).getString("username"));
+		
+		given().
+				param("username", "bulkLongTest2").
+		when().
+				get("/user").
+		then().
+		        statusCode(400);
+	}
+	
+	@Test
+	public void testSuccessfulBulkSignup_ManyChunks() {
+		StringBuilder body = new StringBuilder();
+		
+		for(int i = 1; i <= 11; i++) {
+			body.append("bulkManyTest").append(i).append(",Jingle,Bells,bulkManyTest").append(i).append("@bells.com,jingle123\n");
+		}
+		
+		String[] results = bulkSignUp("text/csv", body.toString());
+		
+		assertEquals(11, results.length);
+		
+		for(int i = 0; i < results.length; i++) {
+			JsonPath result = new JsonPath(results[i]);
+			
+			assertEquals(i + 1, result.getInt("row"));
+			assertEquals("bulkManyTest" + (i + 1), result.getString("username"));
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package com.jingle.controllers;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
@@ -8,6 +12,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.test.context.TestPropertySource;
@@ -15,6 +20,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
 
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
@@ -23,7 +29,7 @@ import io.restassured.module.mockmvc.RestAssuredMockMvc;
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
-@TestPropertySource(properties = "server.ssl.enabled=false")
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true", "spring.jpa.properties.hibernate.generate_statistics=true"})
 public class UserDeleteIntegrationTest {
 	
 	private String authKey;
@@ -32,6 +38,9 @@ public class UserDeleteIntegrationTest {
 	@LocalServerPort
 	private int port;
 	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
 	@Mock
 	private static UserController userController;
 	
@@ -192,5 +201,24 @@ public class UserDeleteIntegrationTest {
 		        contentType(ContentType.JSON).
 		        body("error", equalTo("User with userid (" + userId + ") doesn't exist"));
 	}
+	
+	@Test
+	public void t8_testSuccessfulDelete_SingleStatement() {
+		prepare(8);
+		
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		
+		given().
+				param("userid", userId).and().
+				header("Auth-Key", authKey).
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				delete("/delete").
+		then().
+		        statusCode(200);
+		
+		// Delete should be a single DELETE, with no select beforehand
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
 }
-
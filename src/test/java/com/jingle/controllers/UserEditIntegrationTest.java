@@ -1,5 +1,9 @@
 package com.jingle.controllers;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
@@ -8,6 +12,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.test.context.TestPropertySource;
@@ -15,6 +20,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
 
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
@@ -23,7 +29,7 @@ import io.restassured.module.mockmvc.RestAssuredMockMvc;
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
-@TestPropertySource(properties = "server.ssl.enabled=false")
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true", "spring.jpa.properties.hibernate.generate_statistics=true"})
 public class UserEditIntegrationTest {
 	
 	private String authKey;
@@ -32,6 +38,9 @@ public class UserEditIntegrationTest {
 	@LocalServerPort
 	private int port;
 	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
 	@Mock
 	private static UserController userController;
 	
@@ -103,7 +112,7 @@ public class UserEditIntegrationTest {
 		        body("firstName", equalTo("editNew")).
 		        body("lastName", equalTo("Bells")).
 		        body("emailAddress", equalTo("userEditTest@bells.com1")).
-		        body("passHash", equalTo("OIiN4IgSDnWl5rCYEryyBw=="));
+		        body("$", not(hasKey("passHash")));
 	}
 	
 	@Test
@@ -127,7 +136,7 @@ public class UserEditIntegrationTest {
 		        body("firstName", equalTo("editNew")).
 		        body("lastName", equalTo("Bells")).
 		        body("emailAddress", equalTo("userEditTest@bells.com2")).
-		        body("passHash", equalTo("OIiN4IgSDnWl5rCYEryyBw=="));
+		        body("$", not(hasKey("passHash")));
 	}
 	
 	@Test
@@ -150,7 +159,17 @@ public class UserEditIntegrationTest {
 		        body("firstName", equalTo("editNew")).
 		        body("lastName", equalTo("Bells")).
 		        body("emailAddress", equalTo("userEditTestNew@bells.com3")).
-		        body("passHash", equalTo("OIiN4IgSDnWl5rCYEryyBw=="));
+		        body("$", not(hasKey("passHash")));
+		
+		// No password given, so the old one still works
+		given().
+				param("username", "userEditTest3").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(200);
 	}
 	
 	@Test
@@ -286,5 +305,70 @@ public class UserEditIntegrationTest {
 		        contentType(ContentType.JSON).
 		        body("error", equalTo("Missing request header 'Auth-Key' for method parameter of type String"));
 	}
+	
+	@Test
+	public void t12_testSuccessfulEdit_UpdateThenSelect() {
+		prepare(12);
+		
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		
+		given().
+				param("userid", userId).and().
+				param("firstname", "editNew").and().
+				header("Auth-Key", authKey).
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				put("/edit").
+		then().
+		        statusCode(200).
+		        body("firstName", equalTo("editNew"));
+		
+		// One UPDATE of the changed columns, then one select for the response
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+	
+	@Test
+	public void t13_testSuccessfulEdit_PasswordChangeEndsCachedLogin() {
+		prepare(13);
+		
+		// prepare() logged in once already - this login is served from the LoginCache
+		given().
+				param("username", "userEditTest13").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(200);
+		
+		given().
+				param("userid", userId).and().
+				param("password", "jingle456").and().
+				header("Auth-Key", authKey).
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				put("/edit").
+		then().
+		        statusCode(200).
+		        body("$", not(hasKey("passHash")));
+		
+		given().
+				param("username", "userEditTest13").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(401);
+		
+		given().
+				param("username", "userEditTest13").and().
+				param("password", "jingle456").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(200);
+	}
 }
-
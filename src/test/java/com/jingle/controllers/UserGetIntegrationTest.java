@@ -0,0 +1,184 @@
+package com.jingle.controllers;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true"})
+public class UserGetIntegrationTest {
+	
+	private String authKey;
+	private Integer userId;
+	
+	@LocalServerPort
+	private int port;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	public void prepare(int i) {
+		userId =	given().
+							param("username", "userGetTest" + i).and().
+							param("firstname", "Jingle").and().
+							param("lastname", "Bells").and().
+							param("email", "userGetTest@bells.com" + i).and().
+							param("password", "jingle123").and().
+							header("Content-Type", "application/x-www-form-urlencoded").
+					when().
+							post("/signup").
+					then().
+							extract().
+							jsonPath().getInt("id");
+		
+		authKey = 	given().
+						param("username", "userGetTest" + i).and().
+						param("password", "jingle123").and().
+						header("Content-Type", "application/x-www-form-urlencoded").
+					when().
+						post("/login").
+					then().
+						extract().
+						jsonPath().getString("authKey");
+	}
+
+	@Test
+	public void testSuccessfulGet_ByUserId() {
+		prepare(1);
+		
+		given().
+				param("userid", userId).
+		when().
+				get("/user").
+		then().
+		        statusCode(200).
+		        contentType(ContentType.JSON).
+		        body("id", equalTo(userId)).
+		        body("username", equalTo("userGetTest1")).
+		        body("$", not(hasKey("passHash")));
+	}
+	
+	@Test
+	public void testSuccessfulGet_ByUsername() {
+		prepare(2);
+		
+		given().
+				param("username", "userGetTest2").
+		when().
+				get("/user").
+		then().
+		        statusCode(200).
+		        contentType(ContentType.JSON).
+		        body("id", equalTo(userId)).
+		        body("username", equalTo("userGetTest2"));
+	}
+	
+	@Test
+	public void testSuccessfulGet_ByUsernameInOtherCase() {
+		prepare(5);
+		
+		given().
+				param("username", "USERGETTEST5").
+		when().
+				get("/user").
+		then().
+		        statusCode(200).
+		        body("id", equalTo(userId)).
+		        body("username", equalTo("userGetTest5"));
+	}
+	
+	@Test
+	public void testSuccessfulGet_AfterRename() {
+		prepare(3);
+		
+		// Read both ways first so the user is cached
+		given().param("userid", userId).when().get("/user");
+		given().param("username", "userGetTest3").when().get("/user");
+		
+		given().
+				param("userid", userId).and().
+				param("username", "userGetTestRenamed3").and().
+				header("Auth-Key", authKey).
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				put("/edit");
+		
+		given().
+				param("userid", userId).
+		when().
+				get("/user").
+		then().
+		        statusCode(200).
+		        body("username", equalTo("userGetTestRenamed3"));
+		
+		given().
+				param("username", "userGetTest3").
+		when().
+				get("/user").
+		then().
+		        statusCode(400).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("User with username (userGetTest3) doesn't exist"));
+	}
+	
+	@Test
+	public void testUnsuccessfulGet_AfterDelete() {
+		prepare(4);
+		
+		given().param("userid", userId).when().get("/user");
+		
+		given().
+				param("userid", userId).and().
+				header("Auth-Key", authKey).
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				delete("/delete");
+		
+		given().
+				param("userid", userId).
+		when().
+				get("/user").
+		then().
+		        statusCode(400).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("User with userid (" + userId + ") doesn't exist"));
+	}
+	
+	@Test
+	public void testUnsuccessfulGet_MissingParams() {
+		
+		when().
+				get("/user").
+		then().
+		        statusCode(400).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("Either a userid or username must be provided"));
+	}
+}
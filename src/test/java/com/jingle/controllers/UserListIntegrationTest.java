@@ -0,0 +1,209 @@
+package com.jingle.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+import io.restassured.path.json.JsonPath;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true", "jingle.user-list.fetch-size=2",
+								  "jingle.bulk-signup.admin-key=" + UserListIntegrationTest.ADMIN_KEY})
+public class UserListIntegrationTest {
+	
+	static final String ADMIN_KEY = "userListTestKey";
+	
+	private List<Integer> userIds;
+	
+	@LocalServerPort
+	private int port;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	/**
+	 * Signs up the given number of users - ids only ever increase, so every user
+	 * after (first id - 1) was created by this call
+	 */
+	public void prepare(String prefix, int count) {
+		userIds = new ArrayList<Integer>();
+		
+		for(int i = 1; i <= count; i++) {
+			userIds.add(given().
+								param("username", prefix + i).and().
+								param("firstname", "Jingle").and().
+								param("lastname", "Bells").and().
+								param("email", prefix + i + "@bells.com").and().
+								param("password", "jingle123").and().
+								header("Content-Type", "application/x-www-form-urlencoded").
+						when().
+								post("/signup").
+						then().
+								extract().
+								jsonPath().getInt("id"));
+		}
+	}
+
+	@Test
+	public void testSuccessfulList_PagesByCursor() {
+		prepare("userListTest", 5);
+		int after = userIds.get(0) - 1;
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				param("after", after).and().
+				param("limit", 2).
+		when().
+				get("/users").
+		then().
+		        statusCode(200).
+		        contentType(ContentType.JSON).
+		        body("users.username", contains("userListTest1", "userListTest2")).
+		        body("nextAfter", equalTo(userIds.get(1)));
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				param("after", userIds.get(1)).and().
+				param("limit", 2).
+		when().
+				get("/users").
+		then().
+		        statusCode(200).
+		        body("users.username", contains("userListTest3", "userListTest4")).
+		        body("nextAfter", equalTo(userIds.get(3)));
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				param("after", userIds.get(3)).and().
+				param("limit", 2).
+		when().
+				get("/users").
+		then().
+		        statusCode(200).
+		        body("users.username", contains("userListTest5")).
+		        body("nextAfter", nullValue());
+	}
+	
+	@Test
+	public void testSuccessfulList_FullLastPage() {
+		prepare("userListFullTest", 2);
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				param("after", userIds.get(0) - 1).and().
+				param("limit", 2).
+		when().
+				get("/users").
+		then().
+		        statusCode(200).
+		        body("users.id", contains(userIds.get(0), userIds.get(1))).
+		        body("nextAfter", nullValue());
+	}
+	
+	@Test
+	public void testUnsuccessfulList_InvalidLimit() {
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				param("limit", 0).
+		when().
+				get("/users").
+		then().
+		        statusCode(400).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("Limit must be between 1 and 1000"));
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				param("limit", 1001).
+		when().
+				get("/users").
+		then().
+		        statusCode(400).
+		        body("error", equalTo("Limit must be between 1 and 1000"));
+		
+		given().
+				header("Admin-Key", ADMIN_KEY).
+				param("after", "abc").
+		when().
+				get("/users").
+		then().
+		        statusCode(400).
+		        body("error", equalTo("After must be a numeric value"));
+	}
+	
+	@Test
+	public void testSuccessfulExport() {
+		prepare("userExportTest", 5);
+		
+		String[] lines =	given().
+									header("Admin-Key", ADMIN_KEY).
+									param("after", userIds.get(0) - 1).
+							when().
+									get("/users/export").
+							then().
+									statusCode(200).
+									contentType("application/x-ndjson").
+									extract().
+									asString().
+									split("\n");
+		
+		assertEquals(5, lines.length);
+		
+		for(int i = 0; i < lines.length; i++) {
+			JsonPath user = new JsonPath(lines[i]);
+			
+			assertEquals(userIds.get(i), user.get("id"));
+			assertEquals("userExportTest" + (i + 1), user.getString("username"));
+		}
+	}
+	
+	@Test
+	public void testUnsuccessfulList_NoAdminKey() {
+		
+		when().
+				get("/users").
+		then().
+		        statusCode(401).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("Invalid auth key"));
+		
+		given().
+				header("Admin-Key", "notTheKey").
+		when().
+				get("/users/export").
+		then().
+		        statusCode(401).
+		        body("error", equalTo("Invalid auth key"));
+	}
+}
@@ -1,11 +1,18 @@
 package com.jingle.controllers;
 
+import java.util.Arrays;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.test.context.TestPropertySource;
@@ -13,15 +20,26 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.hamcrest.text.MatchesPattern.matchesPattern;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
 import io.restassured.module.mockmvc.RestAssuredMockMvc;
 
+import com.jingle.models.PasswordHash;
+import com.jingle.models.User;
+import com.jingle.repositories.UserRepository;
+import com.jingle.services.AuthService;
+import com.jingle.services.LoginCache;
+import com.jingle.services.UsernameFilter;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
-@TestPropertySource(properties = "server.ssl.enabled=false")
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true", "spring.jpa.properties.hibernate.generate_statistics=true"})
 public class UserLoginIntegrationTest {
 	
 	private Integer userId;
@@ -29,6 +47,24 @@ public class UserLoginIntegrationTest {
 	@LocalServerPort
 	private int port;
 	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	private UserRepository userRepository;
+	
+	@Autowired
+	private UsernameFilter usernameFilter;
+	
+	@Autowired
+	private MeterRegistry meterRegistry;
+	
+	@Autowired
+	private AuthService authService;
+	
+	@Autowired
+	private LoginCache loginCache;
+	
 	@Mock
 	private static UserController userController;
 	
@@ -76,6 +112,42 @@ public class UserLoginIntegrationTest {
 		        body("authKey", matchesPattern("^[A-Z0-9_]{30}$"));
 	}
 	
+	@Test
+	public void testSuccessfulLogin_SingleQuery() {
+		prepare(8);
+		
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		
+		given().
+				param("username", "userLoginTest8").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(200).
+		        body("id", equalTo(userId));
+		
+		// Login should look the user up exactly once
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+	
+	@Test
+	public void testSuccessfulLogin_IgnoresUsernameCase() {
+		prepare(9);
+		
+		given().
+				param("username", "USERLOGINTEST9").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(200).
+		        body("id", equalTo(userId));
+	}
+	
 	@Test
 	public void testUnsuccessfulLogin_WrongUsername() {
 
@@ -91,6 +163,45 @@ public class UserLoginIntegrationTest {
 		        body("error", equalTo("Incorrect username or password"));
 	}
 	
+	@Test
+	public void testUnsuccessfulLogin_WrongUsername_NoQuery() {
+		
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		
+		given().
+				param("username", "userLoginTestNobody").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(401).
+		        body("error", equalTo("Incorrect username or password"));
+		
+		// Unknown usernames are turned away by the UsernameFilter
+		assertEquals(0, statistics.getPrepareStatementCount());
+	}
+	
+	@Test
+	public void testUnsuccessfulLogin_WrongUsername_StillHashes() {
+		
+		long verified = meterRegistry.get("jingle.password.hash").tag("operation", "verify").timer().count();
+		
+		given().
+				param("username", "userLoginTestNobodyAtAll").and().
+				param("password", "jingle123").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(401).
+		        body("error", equalTo("Incorrect username or password"));
+		
+		// Costs a hash like a wrong password does, so timing doesn't tell which usernames exist
+		assertEquals(verified + 1, meterRegistry.get("jingle.password.hash").tag("operation", "verify").timer().count());
+	}
+	
 	@Test
 	public void testUnsuccessfulLogin_WrongPassword() {
 		prepare(3);
@@ -167,5 +278,44 @@ public class UserLoginIntegrationTest {
 		        contentType(ContentType.JSON).
 		        body("error", equalTo("Incorrect username or password"));
 	}
-
+	
+	@Test
+	public void testSuccessfulLogin_UpgradesLegacyHash() {
+		// "jingle12" hashed the way passwords were before hash parameters were stored
+		byte[] legacyHash = { 1, -90, -36, -117, -26, 98, -66, 14, 30, -109, 25, -111, -52, -115, -56, -90 };
+		
+		usernameFilter.add("userLoginTestLegacy");
+		Long legacyUserId = userRepository.save(new User("userLoginTestLegacy", "Jingle", "Bells", "userLoginTestLegacy@bells.com", legacyHash)).getId();
+		
+		login("userLoginTestLegacy", "jingle12", legacyUserId);
+		
+		// Rehashed with a random salt and the current parameters on the first login
+		PasswordHash upgraded = userRepository.findById(legacyUserId).get().getPassword();
+		
+		assertFalse(upgraded.isLegacy());
+		assertEquals(authService.getHashAlgorithm(), upgraded.getAlgorithm());
+		assertEquals(authService.getHashIterations(), upgraded.getIterations());
+		assertFalse(Arrays.equals(legacyHash, upgraded.getHash()));
+		
+		// Without the LoginCache, the next login has to check the password against the upgraded hash itself
+		loginCache.invalidate(legacyUserId);
+		long verified = meterRegistry.get("jingle.password.hash").tag("operation", "verify").timer().count();
+		
+		login("userLoginTestLegacy", "jingle12", legacyUserId);
+		
+		assertEquals(verified + 1, meterRegistry.get("jingle.password.hash").tag("operation", "verify").timer().count());
+		assertArrayEquals(upgraded.getHash(), userRepository.findById(legacyUserId).get().getPassword().getHash());
+	}
+	
+	private void login(String username, String password, Long expectedUserId) {
+		given().
+				param("username", username).and().
+				param("password", password).and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/login").
+		then().
+		        statusCode(200).
+		        body("id", equalTo(expectedUserId.intValue()));
+	}
 }
@@ -0,0 +1,120 @@
+package com.jingle.controllers;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+import io.restassured.response.Response;
+
+import com.jingle.services.LoginRateLimiter;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true",
+								  "jingle.rate-limit.login.per-username.rate=0.01", "jingle.rate-limit.login.per-username.burst=2",
+								  "jingle.rate-limit.signup.per-ip.rate=0.01", "jingle.rate-limit.signup.per-ip.burst=3"})
+public class UserRateLimitIntegrationTest {
+	
+	@LocalServerPort
+	private int port;
+	
+	@Autowired
+	private LoginRateLimiter loginRateLimiter;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	private Response signUp(String username) {
+		return	given().
+						param("username", username).and().
+						param("firstname", "Jingle").and().
+						param("lastname", "Bells").and().
+						param("email", username + "@bells.com").and().
+						param("password", "jingle123").and().
+						header("Content-Type", "application/x-www-form-urlencoded").
+				when().
+						post("/signup");
+	}
+	
+	private Response login(String username, String password) {
+		return	given().
+						param("username", username).and().
+						param("password", password).and().
+						header("Content-Type", "application/x-www-form-urlencoded").
+				when().
+						post("/login");
+	}
+
+	@Test
+	public void testRateLimited_LoginPerUsername() {
+		signUp("userRateLimitTest1").then().statusCode(201);
+		
+		login("userRateLimitTest1", "wrongPassword").then().statusCode(401);
+		login("userRateLimitTest1", "wrongPassword").then().statusCode(401);
+		
+		long hashesSaved = loginRateLimiter.getHashesSaved();
+		
+		// Even the right password is turned away once the username's attempts are used up
+		login("userRateLimitTest1", "jingle123").
+		then().
+		        statusCode(429).
+		        contentType(ContentType.JSON).
+		        header("Retry-After", not(isEmptyOrNullString())).
+		        body("error", equalTo("Too many requests, please try again later"));
+		
+		assertTrue(loginRateLimiter.getHashesSaved() > hashesSaved);
+		
+		// A login that would have failed before hashing anyway saves no hash by being turned away
+		hashesSaved = loginRateLimiter.getHashesSaved();
+		
+		login("userRateLimitTest1", "short").then().statusCode(429);
+		
+		assertEquals(hashesSaved, loginRateLimiter.getHashesSaved());
+	}
+	
+	@Test
+	public void testRateLimited_SignupPerIp() {
+		// The IP's signups are shared with the other test, so keep going until the limit is hit
+		Response response = null;
+		
+		for(int i = 0; i < 4; i++) {
+			response = signUp("userRateLimitSignupTest" + i);
+			
+			if(response.getStatusCode() == 429) break;
+		}
+		
+		response.
+		then().
+		        statusCode(429).
+		        header("Retry-After", not(isEmptyOrNullString())).
+		        body("error", equalTo("Too many requests, please try again later"));
+	}
+}
@@ -23,7 +23,7 @@ import io.restassured.module.mockmvc.RestAssuredMockMvc;
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
-@TestPropertySource(properties = "server.ssl.enabled=false")
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true"})
 public class UserSignUpIntegrationTest {
 	
 	@LocalServerPort
@@ -64,7 +64,7 @@ public class UserSignUpIntegrationTest {
 		        body("firstName", equalTo("Jingle")).
 		        body("lastName", equalTo("Bells")).
 		        body("emailAddress", equalTo("jingleSignUp@bells.com")).
-		        body("passHash", equalTo("Aabci+Zivg4ekxmRzI3Ipg=="));
+		        body("$", not(hasKey("passHash")));
 	}
 	
 	@Test
@@ -190,5 +190,37 @@ public class UserSignUpIntegrationTest {
 		        contentType(ContentType.JSON).
 		        body("error", equalTo("Password must be a minimum of 8 characters long"));
 	}
+	
+	@Test
+	public void t9_testUnsuccessfulSignup_DuplicateUsernameInOtherCase() {
+		
+		given().
+				param("username", "JINGLESIGNUPTEST").and().
+				param("firstname", "Jingle").and().
+				param("lastname", "Bells").and().
+				param("email", "jingley@bells.com").and().
+				param("password", "jingle12").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/signup").
+		then().
+		        statusCode(409).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("Username already taken"));
+		
+		given().
+				param("username", "jingleTesty").and().
+				param("firstname", "Jingle").and().
+				param("lastname", "Bells").and().
+				param("email", "JingleSignUp@Bells.com").and().
+				param("password", "jingle12").and().
+				header("Content-Type", "application/x-www-form-urlencoded").
+		when().
+				post("/signup").
+		then().
+		        statusCode(409).
+		        contentType(ContentType.JSON).
+		        body("error", equalTo("Email address already taken"));
+	}
 
 }
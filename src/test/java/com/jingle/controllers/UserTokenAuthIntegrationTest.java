@@ -0,0 +1,125 @@
+package com.jingle.controllers;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.text.MatchesPattern.matchesPattern;
+
+import io.restassured.RestAssured;
+import io.restassured.module.mockmvc.RestAssuredMockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {"server.ssl.enabled=false", "spring.datasource.generate-unique-name=true",
+								  "jingle.auth.mode=token", "jingle.auth.token.keys=test:MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY="})
+public class UserTokenAuthIntegrationTest {
+	
+	private String authKey;
+	private Integer userId;
+	
+	@LocalServerPort
+	private int port;
+	
+	@Mock
+	private static UserController userController;
+	
+	@BeforeClass
+	public static void initialiseRestAssuredMockMvcStandalone() {
+		RestAssuredMockMvc.standaloneSetup(userController);
+	}
+	
+	@Before
+	public void init() {
+		MockitoAnnotations.initMocks(this);
+		RestAssured.port = port;
+		RestAssured.useRelaxedHTTPSValidation();
+	}
+	
+	public void prepare(int i) {
+		userId =	given().
+							param("username", "userTokenTest" + i).and().
+							param("firstname", "Jingle").and().
+							param("lastname", "Bells").and().
+							param("email", "userTokenTest" + i + "@bells.com").and().
+							param("password", "jingle123").and().
+							header("Content-Type", "application/x-www-form-urlencoded").
+					when().
+							post("/signup").
+					then().
+							extract().
+							jsonPath().getInt("id");
+		
+		authKey = 	given().
+						param("username", "userTokenTest" + i).and().
+						param("password", "jingle123").and().
+						header("Content-Type", "application/x-www-form-urlencoded").
+					when().
+						post("/login").
+					then().
+						statusCode(200).
+						body("authKey", matchesPattern("^test\\.[0-9a-z]+\\.[0-9a-z]+\\.[A-Za-z0-9_-]{43}$")).
+						extract().
+						jsonPath().getString("authKey");
+	}
+
+	@Test
+	public void testSuccessfulEdit_WithToken() {
+		prepare(1);
+		
+		given().
+				header("Auth-Key", authKey).
+				param("userid", userId).and().
+				param("firstname", "Tinkle").
+		when().
+				put("/edit").
+		then().
+		        statusCode(200).
+		        body("firstName", equalTo("Tinkle"));
+	}
+	
+	@Test
+	public void testUnsuccessfulEdit_TamperedToken() {
+		prepare(2);
+		
+		String otherUsersKey = authKey;
+		prepare(3);
+		
+		// Swap in another user's id - the signature no longer matches
+		String[] parts = otherUsersKey.split("\\.");
+		String forged = parts[0] + "." + Long.toString(userId, 36) + "." + parts[2] + "." + parts[3];
+		
+		given().
+				header("Auth-Key", forged).
+				param("userid", userId).and().
+				param("firstname", "Tinkle").
+		when().
+				put("/edit").
+		then().
+		        statusCode(401).
+		        body("error", equalTo("Invalid auth key"));
+	}
+	
+	@Test
+	public void testSuccessfulDelete_WithToken() {
+		prepare(4);
+		
+		given().
+				header("Auth-Key", authKey).
+				param("userid", userId).
+		when().
+				delete("/delete").
+		then().
+		        statusCode(200).
+		        body("success", equalTo(true));
+	}
+}
@@ -0,0 +1,163 @@
+package com.jingle.repositories;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.jingle.Server;
+import com.jingle.models.User;
+import com.jingle.sessions.Session;
+import com.jingle.sessions.SessionStore;
+
+public class PersistenceProfileTest {
+
+	private static final byte[] PASSWORD_HASH = new byte[16];
+
+	@Rule
+	public TemporaryFolder dataDir = new TemporaryFolder();
+
+	private ConfigurableApplicationContext start(String profiles, String... args) {
+		return start(WebApplicationType.NONE, profiles, args);
+	}
+
+	private ConfigurableApplicationContext start(WebApplicationType type, String profiles, String... args) {
+		return new SpringApplicationBuilder(Server.class)
+					.web(type)
+					.profiles(profiles.split(","))
+					.properties("logging.level.root=WARN", "spring.jmx.enabled=false")
+					.run(args);
+	}
+
+	@Test
+	public void testProdProfile_UsersSurviveRestart() {
+		String dataDirArg = "--jingle.data-dir=" + dataDir.getRoot().getAbsolutePath();
+
+		try(ConfigurableApplicationContext context = start("prod", dataDirArg)) {
+			context.getBean(UserRepository.class).save(new User("persistenceTest", "Jingle", "Bells", "persistenceTest@jingle.com", PASSWORD_HASH));
+		}
+
+		// The schema is already there, so Flyway has nothing to do, and nothing is recreated
+		try(ConfigurableApplicationContext context = start("prod", dataDirArg)) {
+			User user = context.getBean(UserRepository.class).findByUsernameNormalized("persistencetest").orElse(null);
+
+			assertNotNull(user);
+			assertEquals("persistenceTest@jingle.com", user.getEmailAddress());
+		}
+	}
+
+	@Test
+	public void testJdbcSessionStore_FreshDatabase() {
+		String[] args = { "--jingle.data-dir=" + dataDir.getRoot().getAbsolutePath(), "--jingle.session.store=jdbc",
+						  "--server.port=0", "--server.ssl.enabled=false", "--management.server.port=0" };
+		long expiresAt = System.currentTimeMillis() + 60000;
+
+		// Started as a web app, where the metrics binder pulls the store in early - it still has to wait for the migrations
+		try(ConfigurableApplicationContext context = start(WebApplicationType.SERVLET, "prod", args)) {
+			context.getBean(SessionStore.class).put("persistenceTestKey", new Session(1, expiresAt));
+		}
+
+		try(ConfigurableApplicationContext context = start(WebApplicationType.SERVLET, "prod", args)) {
+			Session session = context.getBean(SessionStore.class).get("persistenceTestKey");
+
+			assertNotNull(session);
+			assertEquals(expiresAt, session.getExpiresAt());
+		}
+	}
+
+	@Test
+	public void testIdAllocationSize_MustMatchSequence() {
+		String dataDirArg = "--jingle.data-dir=" + dataDir.getRoot().getAbsolutePath();
+
+		// A new database's sequence is created with the configured size...
+		try(ConfigurableApplicationContext context = start("prod", dataDirArg, "--spring.jpa.properties.jingle.id.allocation-size=20")) {
+			UserRepository userRepository = context.getBean(UserRepository.class);
+
+			userRepository.save(new User("sequenceTest1", "Jingle", "Bells", "sequenceTest1@jingle.com", PASSWORD_HASH));
+			userRepository.save(new User("sequenceTest2", "Jingle", "Bells", "sequenceTest2@jingle.com", PASSWORD_HASH));
+		}
+
+		// ...and changing the size afterwards stops startup, rather than handing out overlapping ids
+		try(ConfigurableApplicationContext context = start("prod", dataDirArg, "--spring.jpa.properties.jingle.id.allocation-size=50")) {
+			fail("Started with an allocation size that doesn't match the sequence");
+		} catch(BeanCreationException ex) {
+			assertTrue(ex.getMostSpecificCause().getMessage().contains("doesn't match user_seq's increment (20)"));
+		}
+	}
+
+	@Test
+	public void testMigrations_RenormalizeInJava() throws Exception {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+
+		FluentConfiguration flyway = Flyway.configure().dataSource(dataSource)
+										   .locations("classpath:db/migration/h2", "classpath:db/migration/common")
+										   .placeholders(Collections.singletonMap("idAllocationSize", "50"));
+
+		flyway.target("2").load().migrate();
+
+		// As left by a database whose lower(...) doesn't agree with User.normalize(...)
+		try(Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("insert into users (id, username, username_normalized, first_name, last_name, email_address, email_address_normalized, password_hash) " +
+							  "values (1, 'TITLE', 't\u0131tle', 'Jingle', 'Bells', 'TITLE@jingle.com', 't\u0131tle@jingle.com', x'00')");
+		}
+
+		flyway.target(MigrationVersion.LATEST).load().migrate();
+
+		try(Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+			ResultSet row = statement.executeQuery("select username_normalized, email_address_normalized from users where id = 1")) {
+
+			assertTrue(row.next());
+			assertEquals("title", row.getString(1));
+			assertEquals("title@jingle.com", row.getString(2));
+		}
+	}
+
+	@Test
+	public void testPostgresMigrations() {
+		// H2 in PostgreSQL mode stands in for PostgreSQL, running the postgresql migrations.
+		// Hibernate validates the mapping against the schema they create
+		try(ConfigurableApplicationContext context = start("prod,postgres",
+				"--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+				"--spring.datasource.username=sa",
+				"--spring.flyway.locations=classpath:db/migration/postgresql,classpath:db/migration/common",
+				"--spring.jpa.hibernate.ddl-auto=validate")) {
+
+			UserRepository userRepository = context.getBean(UserRepository.class);
+			userRepository.save(new User("postgresTest", "Jingle", "Bells", "postgresTest@jingle.com", PASSWORD_HASH));
+
+			try {
+				userRepository.save(new User("POSTGRESTEST", "Jingle", "Bells", "postgresTest2@jingle.com", PASSWORD_HASH));
+				fail("Duplicate username saved");
+			} catch(DataIntegrityViolationException ex) {
+				assertTrue(ex.getMessage().toLowerCase(Locale.ROOT).contains(User.USERNAME_CONSTRAINT));
+			}
+
+			try {
+				userRepository.save(new User("postgresTest3", "Jingle", "Bells", "POSTGRESTEST@jingle.com", PASSWORD_HASH));
+				fail("Duplicate email address saved");
+			} catch(DataIntegrityViolationException ex) {
+				assertTrue(ex.getMessage().toLowerCase(Locale.ROOT).contains(User.EMAIL_ADDRESS_CONSTRAINT));
+			}
+
+			assertTrue(userRepository.findByUsernameNormalized("postgrestest").isPresent());
+		}
+	}
+}
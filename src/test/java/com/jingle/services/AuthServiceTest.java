@@ -2,24 +2,172 @@ package com.jingle.services;
 
 import static org.junit.Assert.*;
 
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.jingle.exceptions.ExpiredAuthKeyException;
+import com.jingle.exceptions.InvalidAuthKeyException;
+import com.jingle.models.PasswordHash;
+import com.jingle.sessions.InMemorySessionStore;
+import com.jingle.sessions.Session;
+import com.jingle.sessions.SignedTokens;
+
 public class AuthServiceTest {
 	
 	private AuthService auth = new AuthService();
 
 	@Test
-	public void testGetPasswordHash() throws NoSuchAlgorithmException, InvalidKeySpecException {
-		assertEquals(Arrays.toString(new int[] {1, -90, -36, -117, -26, 98, -66, 14, 30, -109, 25, -111, -52, -115, -56, -90}), Arrays.toString(auth.getPasswordHash("jingle12")));
+	public void testHashPassword() {
+		PasswordHash hash = auth.hashPassword("jingle12".toCharArray());
+		
+		assertEquals(PasswordHash.LEGACY_ALGORITHM, hash.getAlgorithm());
+		assertEquals(65536, hash.getIterations());
+		assertEquals(16, hash.getSalt().length);
+		assertEquals(16, hash.getHash().length);
+		assertTrue(auth.matches("jingle12".toCharArray(), hash));
+		assertFalse(auth.matches("jingle13".toCharArray(), hash));
+		assertFalse(auth.needsRehash(hash));
+		
+		// Salted at random, so the same password never hashes the same way twice
+		assertFalse(Arrays.equals(hash.getHash(), auth.hashPassword("jingle12".toCharArray()).getHash()));
 	}
 	
 	@Test(expected = IllegalArgumentException.class)
-	public void testGetPasswordHash_LessThanMinLength() throws NoSuchAlgorithmException, InvalidKeySpecException {
-		assertEquals("fail", auth.getPasswordHash("jingle1"));
+	public void testHashPassword_LessThanMinLength() {
+		auth.hashPassword("jingle1".toCharArray());
+	}
+	
+	@Test
+	public void testLegacyHashStillMatches() {
+		byte[] legacyHash = { 1, -90, -36, -117, -26, 98, -66, 14, 30, -109, 25, -111, -52, -115, -56, -90 };
+		PasswordHash stored = PasswordHash.legacy(legacyHash);
+		
+		assertTrue(auth.matches("jingle12".toCharArray(), stored));
+		assertFalse(auth.matches("jingle13".toCharArray(), stored));
+		assertTrue(auth.needsRehash(stored));
+	}
+	
+	@Test
+	public void testNeedsRehash() {
+		AuthService stronger = new AuthService(PasswordHash.LEGACY_ALGORITHM, 100000);
+		AuthService sha256 = new AuthService("PBKDF2WithHmacSHA256", 1000);
+		PasswordHash hash = auth.hashPassword("jingle12".toCharArray());
+		
+		assertTrue(stronger.needsRehash(hash));
+		assertTrue(sha256.needsRehash(hash));
+		
+		// Never downgraded
+		assertFalse(new AuthService(PasswordHash.LEGACY_ALGORITHM, 1000).needsRehash(hash));
+		
+		PasswordHash sha256Hash = sha256.hashPassword("jingle12".toCharArray());
+		
+		assertEquals("PBKDF2WithHmacSHA256", sha256Hash.getAlgorithm());
+		assertTrue(auth.matches("jingle12".toCharArray(), sha256Hash));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownHashAlgorithm() {
+		new AuthService("PBKDF2WithHmacMD2", 1000);
+	}
+	
+	@Test
+	public void testCalibrateIterations() {
+		assertEquals(1000000000, AuthService.calibrateIterations(PasswordHash.LEGACY_ALGORITHM, 1, 1000000000));
+		
+		int iterations = AuthService.calibrateIterations(PasswordHash.LEGACY_ALGORITHM, 50, 1000);
+		
+		assertTrue(iterations >= 1000);
+		assertEquals(0, iterations % 1000);
+	}
+	
+	@Test
+	public void testIsValidAuthKey_RejectedWithoutStackTrace() {
+		try {
+			auth.isValidAuthKey("NOT_A_KEY", 1L);
+			fail();
+		} catch(Exception ex) {
+			assertTrue(ex instanceof InvalidAuthKeyException);
+			assertEquals(0, ex.getStackTrace().length);
+		}
+	}
+	
+	@Test
+	public void testSlidingExpiry() throws Exception {
+		InMemorySessionStore store = new InMemorySessionStore();
+		AuthService slidingAuth = new AuthService(store, true, AuthService.DEFAULT_MAX_LIFETIME);
+		String authKey = slidingAuth.newAuthKey(7L, 1000);
+		Session issued = store.get(authKey);
+		
+		// Plenty of time left, so nothing is written
+		assertTrue(slidingAuth.isValidAuthKey(authKey, 7L));
+		assertSame(issued, store.get(authKey));
+		
+		// Under half left - extended to a full timeout from now
+		Thread.sleep(600);
+		assertTrue(slidingAuth.isValidAuthKey(authKey, 7L));
+		assertTrue(store.get(authKey).getExpiresAt() >= issued.getExpiresAt() + 500);
+		
+		// Still valid past the original expiry
+		Thread.sleep(600);
+		assertTrue(slidingAuth.isValidAuthKey(authKey, 7L));
+	}
+	
+	@Test(expected = ExpiredAuthKeyException.class)
+	public void testSlidingExpiry_MaxLifetime() throws Exception {
+		InMemorySessionStore store = new InMemorySessionStore();
+		AuthService slidingAuth = new AuthService(store, true, 1200);
+		String authKey = slidingAuth.newAuthKey(7L, 1000);
+		
+		// Extended, but only as far as 1200ms after it was issued
+		Thread.sleep(600);
+		assertTrue(slidingAuth.isValidAuthKey(authKey, 7L));
+		assertEquals(store.get(authKey).getIssuedAt() + 1200, store.get(authKey).getExpiresAt());
+		
+		Thread.sleep(700);
+		slidingAuth.isValidAuthKey(authKey, 7L);
+	}
+	
+	@Test
+	public void testFixedExpiry_NotExtended() throws Exception {
+		InMemorySessionStore store = new InMemorySessionStore();
+		AuthService fixedAuth = new AuthService(store);
+		String authKey = fixedAuth.newAuthKey(7L, 1000);
+		Session issued = store.get(authKey);
+		
+		Thread.sleep(600);
+		assertTrue(fixedAuth.isValidAuthKey(authKey, 7L));
+		assertSame(issued, store.get(authKey));
+	}
+	
+	@Test
+	public void testTokenMode() throws Exception {
+		AuthService tokenAuth = new AuthService(SignedTokens.fromConfig("", null));
+		String authKey = tokenAuth.newAuthKey(7L);
+		
+		assertTrue(tokenAuth.isValidAuthKey(authKey, 7L));
+		
+		// Verified by signature alone, so any instance with the same keys accepts it
+		try {
+			tokenAuth.isValidAuthKey(authKey, 8L);
+			fail();
+		} catch(InvalidAuthKeyException ex) {
+		}
+	}
+	
+	@Test(expected = ExpiredAuthKeyException.class)
+	public void testTokenMode_Expired() throws Exception {
+		AuthService tokenAuth = new AuthService(SignedTokens.fromConfig("", null));
+		
+		tokenAuth.isValidAuthKey(tokenAuth.newAuthKey(7L, -1), 7L);
+	}
+	
+	@Test(expected = InvalidAuthKeyException.class)
+	public void testTokenMode_Revoked() throws Exception {
+		AuthService tokenAuth = new AuthService(SignedTokens.fromConfig("", null));
+		String authKey = tokenAuth.newAuthKey(7L);
+		
+		tokenAuth.revokeAuthKeys(7L);
+		tokenAuth.isValidAuthKey(authKey, 7L);
 	}
-
 }
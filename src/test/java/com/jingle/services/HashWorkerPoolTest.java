@@ -0,0 +1,56 @@
+package com.jingle.services;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.jingle.exceptions.ServerBusyException;
+
+public class HashWorkerPoolTest {
+
+	private HashWorkerPool pool = new HashWorkerPool(1, 1);
+
+	@After
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testSupply() throws InterruptedException, ExecutionException {
+		assertEquals("hashed", pool.supply(() -> "hashed").get());
+	}
+
+	@Test
+	public void testSupply_ExceptionCompletesFuture() throws InterruptedException {
+		CompletableFuture<String> future = pool.supply(() -> { throw new IllegalArgumentException("bad password"); });
+
+		try {
+			future.get();
+			fail();
+		} catch(ExecutionException ex) {
+			assertEquals(IllegalArgumentException.class, ex.getCause().getClass());
+		}
+	}
+
+	@Test(expected = ServerBusyException.class)
+	public void testSupply_RejectsWhenQueueFull() throws InterruptedException {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		try {
+			// Occupy the only thread, fill the only queue slot, then overflow
+			pool.supply(() -> { running.countDown(); release.await(); return null; });
+			running.await();
+			pool.supply(() -> null);
+			pool.supply(() -> null);
+		} finally {
+			release.countDown();
+		}
+	}
+
+}
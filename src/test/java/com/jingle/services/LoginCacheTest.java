@@ -0,0 +1,99 @@
+package com.jingle.services;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.jingle.models.User;
+
+public class LoginCacheTest {
+
+	private static final byte[] STORED_HASH = { 1, 2, 3, 4 };
+
+	private LoginCache cache = new LoginCache(100, 60000);
+
+	private User user(long id, String username, byte[] passwordHash) {
+		User user = new User(username, "Jingle", "Bells", username + "@jingle.com", passwordHash);
+		user.setId(id);
+		return user;
+	}
+
+	@Test
+	public void testContains_AfterSuccessfulLogin() {
+		User user = user(1, "loginCacheTest", STORED_HASH);
+
+		assertFalse(cache.contains(user, "jingle12".toCharArray()));
+
+		cache.put(user, STORED_HASH, "jingle12".toCharArray());
+
+		assertTrue(cache.contains(user, "jingle12".toCharArray()));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testContains_OnlyTheSamePassword() {
+		User user = user(1, "loginCacheTest", STORED_HASH);
+
+		cache.put(user, STORED_HASH, "jingle12".toCharArray());
+
+		// Every other password still has to be hashed
+		assertFalse(cache.contains(user, "jingle13".toCharArray()));
+		assertFalse(cache.contains(user, "jingle12 ".toCharArray()));
+		assertFalse(cache.contains(user, "".toCharArray()));
+	}
+
+	@Test
+	public void testContains_NotAfterStoredHashChanges() {
+		cache.put(user(1, "loginCacheTest", STORED_HASH), STORED_HASH, "jingle12".toCharArray());
+
+		// Password changed (or rehashed) since - even without an invalidate
+		assertFalse(cache.contains(user(1, "loginCacheTest", new byte[] { 5, 6, 7, 8 }), "jingle12".toCharArray()));
+
+		// Renamed, or a different user
+		assertFalse(cache.contains(user(1, "loginCacheTestNew", STORED_HASH), "jingle12".toCharArray()));
+		assertFalse(cache.contains(user(2, "loginCacheTest", STORED_HASH), "jingle12".toCharArray()));
+	}
+
+	@Test
+	public void testInvalidate() {
+		User user = user(1, "loginCacheTest", STORED_HASH);
+
+		cache.put(user, STORED_HASH, "jingle12".toCharArray());
+		cache.invalidate(1);
+
+		assertFalse(cache.contains(user, "jingle12".toCharArray()));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		LoginCache shortLived = new LoginCache(100, 50);
+		User user = user(1, "loginCacheTest", STORED_HASH);
+
+		shortLived.put(user, STORED_HASH, "jingle12".toCharArray());
+		Thread.sleep(100);
+
+		assertFalse(shortLived.contains(user, "jingle12".toCharArray()));
+		assertEquals(0, shortLived.size());
+	}
+
+	@Test
+	public void testBounded() {
+		for(int i = 0; i < 1000; i++) {
+			cache.put(user(i, "loginCacheTest" + i, STORED_HASH), STORED_HASH, "jingle12".toCharArray());
+		}
+
+		assertTrue(cache.size() <= 100);
+	}
+
+	@Test
+	public void testDisabled() {
+		LoginCache disabled = new LoginCache(0, 60000);
+		User user = user(1, "loginCacheTest", STORED_HASH);
+
+		disabled.put(user, STORED_HASH, "jingle12".toCharArray());
+
+		assertFalse(disabled.contains(user, "jingle12".toCharArray()));
+	}
+}
@@ -0,0 +1,65 @@
+package com.jingle.services;
+
+import static org.junit.Assert.*;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.junit.Test;
+
+public class PasswordHasherTest {
+
+	private PasswordHasher hasher = new PasswordHasher();
+
+	private byte[] jceHash(String password, byte[] salt, int iterations, int keyLength) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		return jceHash("PBKDF2WithHmacSHA1", password, salt, iterations, keyLength);
+	}
+
+	private byte[] jceHash(String algorithm, String password, byte[] salt, int iterations, int keyLength) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		SecretKeyFactory factory = SecretKeyFactory.getInstance(algorithm);
+		return factory.generateSecret(new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength)).getEncoded();
+	}
+
+	@Test
+	public void testMatchesJce() throws NoSuchAlgorithmException, InvalidKeySpecException {
+		byte[] salt = "saltsaltsaltsaltsalt".getBytes();
+
+		assertArrayEquals(jceHash("jingle12", salt, 1000, 128), hasher.hash("jingle12".toCharArray(), salt, 1000, 128));
+	}
+
+	@Test
+	public void testMatchesJce_MultipleBlocks() throws NoSuchAlgorithmException, InvalidKeySpecException {
+		byte[] salt = "salt".getBytes();
+
+		assertArrayEquals(jceHash("jingle12", salt, 10, 512), hasher.hash("jingle12".toCharArray(), salt, 10, 512));
+	}
+
+	@Test
+	public void testMatchesJce_NonAsciiAndLongPasswords() throws NoSuchAlgorithmException, InvalidKeySpecException {
+		byte[] salt = "saltsaltsaltsaltsalt".getBytes();
+		String unicode = "jïnglé €中😀";
+		String longPassword = new String(new char[100]).replace('\0', 'x');
+
+		assertArrayEquals(jceHash(unicode, salt, 100, 128), hasher.hash(unicode.toCharArray(), salt, 100, 128));
+		assertArrayEquals(jceHash(longPassword, salt, 100, 128), hasher.hash(longPassword.toCharArray(), salt, 100, 128));
+
+		// Buffers are reused, so a shorter password after a longer one must not pick up leftovers
+		assertArrayEquals(jceHash("jingle12", salt, 100, 128), hasher.hash("jingle12".toCharArray(), salt, 100, 128));
+	}
+
+	@Test
+	public void testMatchesJce_Sha256() throws NoSuchAlgorithmException, InvalidKeySpecException {
+		byte[] salt = "saltsaltsaltsaltsalt".getBytes();
+
+		assertArrayEquals(jceHash("PBKDF2WithHmacSHA256", "jingle12", salt, 1000, 512),
+						  hasher.hash("PBKDF2WithHmacSHA256", "jingle12".toCharArray(), salt, 1000, 512));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidIterations() {
+		hasher.hash("jingle12".toCharArray(), new byte[20], 0, 128);
+	}
+}
@@ -0,0 +1,121 @@
+package com.jingle.services;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+	private static final long SECOND = 1000000000L;
+
+	@Test
+	public void testBurstThenRejected() {
+		RateLimiter limiter = new RateLimiter(1, 3, 1000);
+
+		assertEquals(0, limiter.tryAcquire("KEY", 0));
+		assertEquals(0, limiter.tryAcquire("KEY", 0));
+		assertEquals(0, limiter.tryAcquire("KEY", 0));
+		assertEquals(SECOND, limiter.tryAcquire("KEY", 0));
+
+		// Other keys have buckets of their own
+		assertEquals(0, limiter.tryAcquire("OTHER", 0));
+	}
+
+	@Test
+	public void testRefillsAtRate() {
+		RateLimiter limiter = new RateLimiter(2, 1, 1000);
+
+		assertEquals(0, limiter.tryAcquire("KEY", 0));
+		assertEquals(SECOND / 2, limiter.tryAcquire("KEY", 0));
+		assertEquals(SECOND / 4, limiter.tryAcquire("KEY", SECOND / 4));
+		assertEquals(0, limiter.tryAcquire("KEY", SECOND / 2));
+	}
+
+	@Test
+	public void testRejectionTakesNoToken() {
+		RateLimiter limiter = new RateLimiter(1, 1, 1000);
+
+		assertEquals(0, limiter.tryAcquire("KEY", 0));
+
+		for(int i = 0; i < 10; i++) {
+			assertTrue(limiter.tryAcquire("KEY", 0) > 0);
+		}
+
+		assertEquals(0, limiter.tryAcquire("KEY", SECOND));
+	}
+
+	@Test
+	public void testTableIsBounded() {
+		RateLimiter limiter = new RateLimiter(1, 1, 64);
+
+		for(int i = 0; i < 10000; i++) {
+			limiter.tryAcquire("KEY" + i, 0);
+		}
+
+		assertTrue(limiter.size() <= 64);
+	}
+
+	@Test
+	public void testRefilledBucketsAreSwept() {
+		RateLimiter limiter = new RateLimiter(1, 1, 6400);
+
+		for(int i = 0; i < 100000; i++) {
+			limiter.tryAcquire("KEY" + i, 0);
+		}
+
+		assertTrue(limiter.size() <= 6400);
+
+		// Every bucket has refilled a minute later, so new keys get buckets of their own again
+		for(int i = 0; i < 100; i++) {
+			assertEquals(0, limiter.tryAcquire("LATER" + i, 60 * SECOND));
+		}
+	}
+
+	@Test
+	public void testNewKeysAreNotThrottledByAFullTable() {
+		RateLimiter limiter = new RateLimiter(1, 1, 64);
+
+		for(int i = 0; i < 10000; i++) {
+			limiter.tryAcquire("KEY" + i, 0);
+		}
+
+		// None of the buckets has refilled, but a new key still gets a full bucket of its own
+		assertEquals(0, limiter.tryAcquire("NEW", 0));
+		assertEquals(SECOND, limiter.tryAcquire("NEW", 0));
+		assertEquals(0, limiter.tryAcquire("ANOTHER", 0));
+	}
+
+	@Test
+	public void testBucketNearestRefillIsEvicted() {
+		RateLimiter limiter = new RateLimiter(1, 1, 128);
+		String[] keys = keysInOneStripe(3);
+
+		assertEquals(0, limiter.tryAcquire(keys[0], 0));
+		assertEquals(0, limiter.tryAcquire(keys[1], SECOND / 10));
+
+		// The stripe holds two buckets, so the first key's - the nearest to refilling - makes way
+		assertEquals(0, limiter.tryAcquire(keys[2], SECOND / 5));
+		assertTrue(limiter.tryAcquire(keys[1], SECOND / 5) > 0);
+		assertTrue(limiter.tryAcquire(keys[2], SECOND / 5) > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRate() {
+		new RateLimiter(0, 1, 1000);
+	}
+
+	/**
+	 * Keys that land in the same one of RateLimiter's 64 stripes
+	 */
+	private static String[] keysInOneStripe(int count) {
+		String[] keys = new String[count];
+
+		for(int i = 0, found = 0; found < count; i++) {
+			if((("KEY" + i).hashCode() & 0x7fffffff) % 64 == 0) {
+				keys[found++] = "KEY" + i;
+			}
+		}
+
+		return keys;
+	}
+}
@@ -0,0 +1,135 @@
+package com.jingle.services;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.jingle.models.UserProfile;
+
+public class UserCacheTest {
+
+	private UserCache cache = new UserCache(100, 60000);
+
+	private UserProfile user(long id, String username) {
+		return new UserProfile(id, username, "Jingle", "Bells", username + "@jingle.com");
+	}
+
+	@Test
+	public void testGetById_ReadThrough() {
+		AtomicInteger loads = new AtomicInteger();
+		UserProfile user = user(1, "cacheTest");
+
+		assertSame(user, cache.getById(1, () -> { loads.incrementAndGet(); return user; }));
+		assertSame(user, cache.getById(1, () -> { loads.incrementAndGet(); return user; }));
+
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testGetByUsername_SharesEntryWithId() {
+		UserProfile user = user(1, "cacheTest");
+		cache.getById(1, () -> user);
+
+		assertSame(user, cache.getByUsername("cacheTest", () -> { fail(); return null; }));
+	}
+
+	@Test
+	public void testGetByUsername_IgnoresCase() {
+		UserProfile user = user(1, "cacheTest");
+		cache.getById(1, () -> user);
+
+		assertSame(user, cache.getByUsername("CACHETEST", () -> { fail(); return null; }));
+		assertSame(user, cache.getAllByUsername(Arrays.asList("CacheTest"), usernames -> { fail(); return null; }).get("cachetest"));
+	}
+
+	@Test
+	public void testInvalidate_AfterRename() {
+		cache.getById(1, () -> user(1, "oldName"));
+		cache.invalidate(1);
+
+		UserProfile renamed = user(1, "newName");
+
+		assertSame(renamed, cache.getByUsername("newName", () -> renamed));
+		assertNull(cache.getByUsername("oldName", () -> null));
+	}
+
+	@Test
+	public void testLoadRacingInvalidation_IsNotCached() {
+		cache.getById(1, () -> {
+			cache.invalidate(1);
+			return user(1, "stale");
+		});
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpiredEntriesAreReloaded() {
+		UserCache expiring = new UserCache(100, 0);
+		AtomicInteger loads = new AtomicInteger();
+
+		expiring.getById(1, () -> { loads.incrementAndGet(); return user(1, "cacheTest"); });
+		expiring.getById(1, () -> { loads.incrementAndGet(); return user(1, "cacheTest"); });
+
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testMaxSizeEvictsOldestEntries() {
+		UserCache small = new UserCache(10, 60000);
+
+		for(long i = 1; i <= 11; i++) {
+			long id = i;
+			small.getById(id, () -> user(id, "cacheTest" + id));
+		}
+
+		assertEquals(9, small.size());
+		assertEquals(2, small.getEvictions());
+	}
+
+	@Test
+	public void testZeroMaxSizeDisablesCaching() {
+		UserCache disabled = new UserCache(0, 60000);
+		disabled.getById(1, () -> user(1, "cacheTest"));
+
+		assertEquals(0, disabled.size());
+	}
+
+	@Test
+	public void testGetAllById_LoadsOnlyMissingIdsInOneCall() {
+		AtomicInteger loads = new AtomicInteger();
+		UserProfile cached = user(1, "cached");
+		cache.getById(1, () -> cached);
+
+		Map<Long, UserProfile> users = cache.getAllById(Arrays.asList(1L, 2L, 3L), ids -> {
+			loads.incrementAndGet();
+			assertEquals(Arrays.asList(2L, 3L), Arrays.asList(ids.toArray()));
+			return Collections.singletonList(user(2, "loaded"));
+		});
+
+		assertEquals(1, loads.get());
+		assertSame(cached, users.get(1L));
+		assertEquals("loaded", users.get(2L).getUsername());
+		assertFalse(users.containsKey(3L));
+
+		assertEquals("loaded", cache.getByUsername("loaded", () -> { fail(); return null; }).getUsername());
+	}
+
+	@Test
+	public void testGetAllByUsername_AllCached() {
+		cache.getById(1, () -> user(1, "first"));
+		cache.getById(2, () -> user(2, "second"));
+
+		Map<String, UserProfile> users = cache.getAllByUsername(Arrays.asList("first", "second"), usernames -> { fail(); return null; });
+
+		assertEquals(2, users.size());
+		assertEquals(2, cache.getHits());
+	}
+}
@@ -0,0 +1,94 @@
+package com.jingle.services;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Test;
+
+import com.jingle.repositories.UserRepository;
+
+public class UsernameFilterTest {
+
+	private UserRepository userRepository = mock(UserRepository.class);
+
+	private UsernameFilter loadedFilter(boolean enabled) {
+		UsernameFilter filter = new UsernameFilter(userRepository, enabled, 10000, 0.01);
+		filter.load();
+		return filter;
+	}
+
+	@Test
+	public void testAddedNamesAreAlwaysFound() {
+		UsernameFilter filter = loadedFilter(true);
+
+		for(int i = 0; i < 10000; i++) {
+			filter.add("filterTest" + i);
+		}
+
+		for(int i = 0; i < 10000; i++) {
+			assertTrue(filter.mightContain("filterTest" + i));
+		}
+
+		assertEquals(10000, filter.getInsertions());
+	}
+
+	@Test
+	public void testUnknownNamesAreMostlyRejected() {
+		UsernameFilter filter = loadedFilter(true);
+
+		for(int i = 0; i < 10000; i++) {
+			filter.add("filterTest" + i);
+		}
+
+		int falsePositives = 0;
+
+		for(int i = 0; i < 10000; i++) {
+			if(filter.mightContain("unknown" + i)) falsePositives++;
+		}
+
+		// Sized for 1%, and rounding the bit array up to a power of two only lowers that
+		assertTrue("False positives: " + falsePositives, falsePositives < 200);
+		assertEquals(10000 - falsePositives, filter.getRejections());
+	}
+
+	@Test
+	public void testEverythingMightExistUntilLoaded() {
+		UsernameFilter filter = new UsernameFilter(userRepository, true, 10000, 0.01);
+
+		assertTrue(filter.mightContain("unknown"));
+
+		filter.load();
+
+		assertFalse(filter.mightContain("unknown"));
+	}
+
+	@Test
+	public void testDisabled() {
+		UsernameFilter filter = loadedFilter(false);
+
+		assertTrue(filter.mightContain("unknown"));
+		verifyZeroInteractions(userRepository);
+	}
+
+	@Test
+	public void testOffWhenTheDatabaseMayBeShared() {
+		assertFalse(UsernameFilter.isShared("session", ""));
+		assertFalse(UsernameFilter.isShared("session", "jdbc:h2:mem:testdb"));
+		assertFalse(UsernameFilter.isShared("session", "jdbc:h2:file:./data/jingle"));
+
+		assertTrue(UsernameFilter.isShared("token", ""));
+		assertTrue(UsernameFilter.isShared("session", "jdbc:postgresql://localhost:5432/jingle"));
+		assertTrue(UsernameFilter.isShared("session", "jdbc:h2:tcp://db/jingle"));
+
+		UsernameFilter filter = new UsernameFilter(userRepository, true, 10000, 0.01, "session", "jdbc:postgresql://localhost:5432/jingle");
+		filter.load();
+
+		assertTrue(filter.mightContain("unknown"));
+		verifyZeroInteractions(userRepository);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidFalsePositiveRate() {
+		new UsernameFilter(userRepository, true, 10000, 1);
+	}
+}
@@ -0,0 +1,84 @@
+package com.jingle.sessions;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSessionStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final long LATER = System.currentTimeMillis() + 60000;
+
+	@Test
+	public void testSessionsSurviveRestart() throws Exception {
+		Path log = folder.getRoot().toPath().resolve("sessions.log");
+
+		try(FileSessionStore store = new FileSessionStore(new InMemorySessionStore(), log, 64 * 1024, 1000)) {
+			store.put("key1", new Session(1, LATER, 1000, 60000));
+			store.put("key2", new Session(2, LATER));
+			store.put("expired", new Session(3, System.currentTimeMillis() - 1));
+			store.remove("key2");
+		}
+
+		try(FileSessionStore store = new FileSessionStore(new InMemorySessionStore(), log, 64 * 1024, 1000)) {
+			assertEquals(1, store.size());
+			assertEquals(1, store.get("key1").getUserId());
+			assertEquals(LATER, store.get("key1").getExpiresAt());
+			assertEquals(1000, store.get("key1").getIssuedAt());
+			assertEquals(60000, store.get("key1").getIdleTimeout());
+			assertNull(store.get("key2"));
+			assertNull(store.get("expired"));
+		}
+	}
+
+	@Test
+	public void testFullLogIsCompacted() throws Exception {
+		Path log = folder.getRoot().toPath().resolve("sessions.log");
+
+		// Room for the header and 7 records
+		try(FileSessionStore store = new FileSessionStore(new InMemorySessionStore(), log, 1024, 1000)) {
+			for(int i = 0; i < 100; i++) {
+				store.put("key" + i, new Session(i, LATER));
+				store.remove("key" + i);
+			}
+
+			store.put("kept", new Session(42, LATER));
+		}
+
+		assertTrue(Files.size(log) < 4096);
+
+		try(FileSessionStore store = new FileSessionStore(new InMemorySessionStore(), log, 1024, 1000)) {
+			assertEquals(1, store.size());
+			assertEquals(42, store.get("kept").getUserId());
+		}
+	}
+
+	@Test
+	public void testOnlyKeyHashesAreWritten() throws Exception {
+		Path log = folder.getRoot().toPath().resolve("sessions.log");
+		String longKey = new String(new char[200]).replace('\0', 'k');
+
+		try(FileSessionStore store = new FileSessionStore(new InMemorySessionStore(), log, 1024, 1000)) {
+			store.put("plaintextKey", new Session(1, LATER));
+			store.put(longKey, new Session(2, LATER));
+		}
+
+		String contents = new String(Files.readAllBytes(log), StandardCharsets.US_ASCII);
+
+		assertFalse(contents.contains("plaintextKey"));
+		assertFalse(contents.contains("kkkk"));
+
+		try(FileSessionStore store = new FileSessionStore(new InMemorySessionStore(), log, 1024, 1000)) {
+			assertEquals(1, store.get("plaintextKey").getUserId());
+			assertEquals(2, store.get(longKey).getUserId());
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.jingle.sessions;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class InMemorySessionStoreTest {
+
+	@Test
+	public void testPutAndGet() {
+		InMemorySessionStore store = new InMemorySessionStore();
+		store.put("KEY", new Session(5, Long.MAX_VALUE));
+
+		assertEquals(5, store.get("KEY").getUserId());
+		assertNull(store.get("MISSING"));
+		assertNull(store.get(null));
+	}
+
+	@Test
+	public void testSweepRemovesExpiredSessions() {
+		InMemorySessionStore store = new InMemorySessionStore(10, 1000);
+		store.put("EXPIRED", new Session(1, 100));
+		store.put("LIVE", new Session(2, 300));
+
+		store.sweep(200);
+
+		assertNull(store.get("EXPIRED"));
+		assertNotNull(store.get("LIVE"));
+	}
+
+	@Test
+	public void testSweepIntervalTriggersSweep() {
+		InMemorySessionStore store = new InMemorySessionStore(10, 2);
+		store.put("EXPIRED", new Session(1, 0));
+		store.put("LIVE", new Session(2, Long.MAX_VALUE));
+
+		assertEquals(1, store.size());
+		assertNotNull(store.get("LIVE"));
+	}
+
+	@Test
+	public void testMaxSizeEvictsSessionsClosestToExpiring() {
+		long later = System.currentTimeMillis() + 60000;
+		InMemorySessionStore store = new InMemorySessionStore(2, 1000);
+		store.put("FIRST", new Session(1, later + 1));
+		store.put("SECOND", new Session(2, later + 3));
+		store.put("THIRD", new Session(3, later + 2));
+
+		assertEquals(2, store.size());
+		assertNull(store.get("FIRST"));
+		assertNotNull(store.get("SECOND"));
+		assertNotNull(store.get("THIRD"));
+	}
+
+	@Test
+	public void testMaxSizeEvictsDownToLowWatermark() {
+		long later = System.currentTimeMillis() + 60000;
+		InMemorySessionStore store = new InMemorySessionStore(100, 1000);
+
+		for(int i = 0; i <= 100; i++) {
+			store.put("KEY" + i, new Session(i, later + i));
+		}
+
+		assertEquals(90, store.size());
+		assertNull(store.get("KEY10"));
+		assertNotNull(store.get("KEY11"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxSize() {
+		new InMemorySessionStore(0, 1);
+	}
+}
@@ -0,0 +1,84 @@
+package com.jingle.sessions;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class JdbcSessionStoreTest {
+
+	private static final long LATER = System.currentTimeMillis() + 60000;
+
+	private JdbcDataSource dataSource;
+
+	@Before
+	public void setUp() {
+		// Kept open between connections, so the table outlives the first store
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+
+		// The store relies on the migrations for its table
+		Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/h2", "classpath:db/migration/common")
+			  .placeholders(Collections.singletonMap("idAllocationSize", "50")).load().migrate();
+	}
+
+	@Test
+	public void testSessionsSurviveRestart() {
+		JdbcSessionStore store = new JdbcSessionStore(new InMemorySessionStore(), dataSource, 1000, 2);
+
+		store.put("key1", new Session(1, LATER));
+		store.put("key2", new Session(2, LATER));
+		store.put("key3", new Session(3, LATER - 1000, 1000, 60000));
+		store.flush();
+		
+		// Extended after the first write has been flushed
+		store.put("key3", new Session(3, LATER, 1000, 60000));
+		store.put("expired", new Session(4, System.currentTimeMillis() - 1));
+		store.remove("key2");
+		store.close();
+
+		assertEquals(0, store.getFailedFlushes());
+
+		JdbcSessionStore reloaded = new JdbcSessionStore(new InMemorySessionStore(), dataSource, 1000, 2);
+
+		assertEquals(2, reloaded.size());
+		assertEquals(1, reloaded.get("key1").getUserId());
+		assertEquals(LATER, reloaded.get("key3").getExpiresAt());
+		assertEquals(1000, reloaded.get("key3").getIssuedAt());
+		assertEquals(60000, reloaded.get("key3").getIdleTimeout());
+		assertNull(reloaded.get("key2"));
+		assertNull(reloaded.get("expired"));
+
+		reloaded.close();
+	}
+
+	@Test
+	public void testReadsDontWaitForFlush() {
+		JdbcSessionStore store = new JdbcSessionStore(new InMemorySessionStore(), dataSource, 60000, 500);
+
+		store.put("key1", new Session(1, LATER));
+
+		assertEquals(1, store.get("key1").getUserId());
+
+		store.close();
+	}
+
+	@Test
+	public void testOnlyKeyHashesAreWritten() {
+		JdbcSessionStore store = new JdbcSessionStore(new InMemorySessionStore(), dataSource, 1000, 500);
+
+		store.put("plaintextKey", new Session(1, LATER));
+		store.close();
+
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+		assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("select count(*) from auth_session", Integer.class));
+		assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("select count(*) from auth_session where auth_key like '%plaintextKey%'", Integer.class));
+	}
+}
@@ -0,0 +1,76 @@
+package com.jingle.sessions;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SignedTokensTest {
+
+	private static final byte[] OLD_SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+	private static final byte[] NEW_SECRET = "fedcba9876543210fedcba9876543210".getBytes();
+
+	private SignedTokens tokens(String activeKid, String... kids) {
+		Map<String, byte[]> secrets = new LinkedHashMap<String, byte[]>();
+
+		for(String kid : kids) {
+			secrets.put(kid, kid.equals("old") ? OLD_SECRET : NEW_SECRET);
+		}
+
+		return new SignedTokens(secrets, activeKid);
+	}
+
+	@Test
+	public void testIssueAndVerify() {
+		SignedTokens tokens = tokens("old", "old");
+		Session session = tokens.verify(tokens.issue(42, 1234567890123L));
+
+		assertEquals(42, session.getUserId());
+		assertEquals(1234567890123L, session.getExpiresAt());
+	}
+
+	@Test
+	public void testTamperedTokensAreRejected() {
+		SignedTokens tokens = tokens("old", "old");
+		String token = tokens.issue(42, 1234567890123L);
+		String[] parts = token.split("\\.");
+
+		// Someone else's userid, a later expiry, a bad signature, and garbage
+		assertNull(tokens.verify(parts[0] + "." + Long.toString(43, 36) + "." + parts[2] + "." + parts[3]));
+		assertNull(tokens.verify(parts[0] + "." + parts[1] + "." + Long.toString(9999999999999L, 36) + "." + parts[3]));
+		assertNull(tokens.verify(token.substring(0, token.length() - 2) + "AA"));
+		assertNull(tokens.verify("not.a.token"));
+		assertNull(tokens.verify("old.1.2.!!!"));
+		assertNull(tokens.verify(null));
+	}
+
+	@Test
+	public void testKeyRotation() {
+		String oldToken = tokens("old", "old").issue(42, 1234567890123L);
+
+		// The new key is active, but the old one is still accepted...
+		SignedTokens rotated = tokens("new", "old", "new");
+
+		assertTrue(rotated.issue(42, 1234567890123L).startsWith("new."));
+		assertNotNull(rotated.verify(oldToken));
+
+		// ...until it is removed
+		assertNull(tokens("new", "new").verify(oldToken));
+	}
+
+	@Test
+	public void testFromConfig() {
+		SignedTokens tokens = SignedTokens.fromConfig("old:MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=, new:ZmVkY2JhOTg3NjU0MzIxMGZlZGNiYTk4NzY1NDMyMTA=", "");
+
+		assertTrue(tokens.issue(1, 1).startsWith("new."));
+		assertNotNull(tokens("new", "new").verify(tokens.issue(1, 1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShortSecret() {
+		new SignedTokens(Collections.singletonMap("old", new byte[16]), "old");
+	}
+}
@@ -0,0 +1,142 @@
+package com.jingle.tracing;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TracerTest {
+
+	private Tracer tracer = new Tracer(1, 3, 5, null);
+
+	@After
+	public void detach() {
+		Tracer.restore(null);
+	}
+
+	private Span trace(String name) {
+		Span root = tracer.startTrace(name);
+		Tracer.attach(root);
+		return root;
+	}
+
+	@Test
+	public void testSamplingOff() {
+		Tracer off = new Tracer(0, 3, 5, null);
+
+		assertNull(off.startTrace("GET /user"));
+		assertNull(Tracer.startSpan("UserController.getUser"));
+		assertNull(Tracer.current());
+	}
+
+	@Test
+	public void testSpanTree() {
+		Span root = trace("PUT /edit");
+
+		Span helper = Tracer.startSpan("UserControllerHelper.editUser");
+		Span auth = Tracer.startSpan("AuthService.isValidAuthKey");
+		Tracer.endSpan(auth);
+
+		assertSame(helper, Tracer.current());
+
+		Span repository = Tracer.startSpan("UserRepository.updateUser");
+		repository.setError(new IllegalStateException());
+		Tracer.endSpan(repository);
+		Tracer.endSpan(helper);
+
+		assertSame(root, Tracer.current());
+
+		tracer.endTrace(root);
+
+		assertEquals(32, root.getTraceId().length());
+		assertEquals(Arrays.asList(helper), root.getChildren());
+		assertEquals(Arrays.asList(auth, repository), helper.getChildren());
+		assertEquals(helper.getSpanId(), auth.getParentId());
+		assertEquals(root.getTraceId(), repository.getTraceId());
+		assertEquals("IllegalStateException", repository.getError());
+		assertTrue(root.isFinished());
+		assertEquals(Arrays.asList(root, helper, auth, repository), root.flatten());
+	}
+
+	@Test
+	public void testMaxSpans() {
+		Span root = trace("POST /signup/bulk");
+
+		for(int i = 0; i < 6; i++) {
+			Span span = Tracer.startSpan("UserRepository.saveAll");
+
+			if(i < 4) {
+				Tracer.endSpan(span);
+			} else {
+				assertNull(span);
+			}
+		}
+
+		tracer.endTrace(root);
+
+		assertEquals(4, root.getChildren().size());
+		assertEquals(Integer.valueOf(2), root.getDroppedSpans());
+	}
+
+	@Test
+	public void testRingBuffer() {
+		for(int i = 0; i < 5; i++) {
+			tracer.endTrace(tracer.startTrace("GET /user " + i));
+		}
+
+		List<Span> traces = tracer.getTraces();
+
+		assertEquals(5, tracer.getTracesRecorded());
+		assertEquals(3, traces.size());
+		assertEquals("GET /user 4", traces.get(0).getName());
+		assertEquals("GET /user 2", traces.get(2).getName());
+	}
+
+	@Test
+	public void testWrap_CarriesSpanToAnotherThread() throws InterruptedException, ExecutionException {
+		Span root = trace("POST /login");
+
+		CompletableFuture.runAsync(Tracer.wrap(() -> Tracer.endSpan(Tracer.startSpan("AuthService.matches")))).get();
+
+		assertEquals("AuthService.matches", root.getChildren().get(0).getName());
+		assertNotEquals(Thread.currentThread().getName(), root.getChildren().get(0).getThread());
+
+		// Nothing to carry over
+		Tracer.restore(null);
+		Runnable task = () -> {};
+
+		assertSame(task, Tracer.wrap(task));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testOtlpExport() {
+		Span root = trace("POST /login");
+		root.tag("http.status_code", "200");
+		Tracer.endSpan(Tracer.startSpan("AuthService.matches"));
+		tracer.endTrace(root);
+
+		OtlpExporter exporter = new OtlpExporter("http://localhost:4318/", "jingle");
+
+		try {
+			Map<String, Object> request = exporter.toOtlp(Arrays.asList(root));
+
+			Map<String, Object> resourceSpans = ((List<Map<String, Object>>)request.get("resourceSpans")).get(0);
+			Map<String, Object> scopeSpans = ((List<Map<String, Object>>)resourceSpans.get("scopeSpans")).get(0);
+			List<Map<String, Object>> spans = (List<Map<String, Object>>)scopeSpans.get("spans");
+
+			assertEquals(2, spans.size());
+			assertEquals(root.getSpanId(), spans.get(1).get("parentSpanId"));
+			assertEquals(2, spans.get(0).get("kind"));
+			assertEquals(Long.toString(root.getStartEpochNanos()), spans.get(0).get("startTimeUnixNano"));
+		} finally {
+			exporter.close();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.jingle.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class EvictorTest {
+
+	private final Map<String, Long> map = new ConcurrentHashMap<String, Long>();
+	private final List<String> evicted = new ArrayList<String>();
+
+	private final Evictor<String, Long> evictor = new Evictor<String, Long>(map, 100, expiresAt -> expiresAt, (key, expiresAt) -> evicted.add(key));
+
+	@Test
+	public void testExpiredEntriesAreRemoved() {
+		map.put("EXPIRED", 10L);
+		map.put("LIVE", 30L);
+
+		evictor.evict(20);
+
+		assertEquals(1, map.size());
+		assertTrue(map.containsKey("LIVE"));
+		assertEquals(1, evicted.size());
+	}
+
+	@Test
+	public void testOverCapacityEvictsSoonestToExpireDownToNinetyPercent() {
+		for(long i = 0; i <= 100; i++) {
+			map.put("KEY" + i, 1000 + i);
+		}
+
+		evictor.evict(0);
+
+		assertEquals(90, map.size());
+		assertEquals(11, evicted.size());
+		assertFalse(map.containsKey("KEY10"));
+		assertTrue(map.containsKey("KEY11"));
+	}
+
+	@Test
+	public void testAtCapacityOnlyExpiredEntriesGo() {
+		for(long i = 0; i < 100; i++) {
+			map.put("KEY" + i, 1000 + i);
+		}
+
+		evictor.evict(0);
+
+		assertEquals(100, map.size());
+		assertTrue(evicted.isEmpty());
+	}
+}